@@ -0,0 +1,115 @@
+package edu.project.upload.configuration;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits how many submitted tasks run at the same time. Tasks wait for a permit on their own thread,
+ * which is cheap for virtual threads and never blocks the submitter. With a queue capacity, tasks beyond
+ * that many pending ones are rejected right away.
+ */
+public class BoundedExecutorService extends AbstractExecutorService {
+    private final ExecutorService delegate;
+    private final Semaphore permits;
+    private final int maxConcurrentTasks;
+    private final int queueCapacity;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+
+    public BoundedExecutorService(ExecutorService delegate, int maxConcurrentTasks) {
+        this(delegate, maxConcurrentTasks, 0);
+    }
+
+    /**
+     * @param queueCapacity tasks that may wait for a permit, {@code 0} means unbounded
+     */
+    public BoundedExecutorService(ExecutorService delegate, int maxConcurrentTasks, int queueCapacity) {
+        this.delegate = delegate;
+        this.permits = new Semaphore(maxConcurrentTasks);
+        this.maxConcurrentTasks = maxConcurrentTasks;
+        this.queueCapacity = queueCapacity;
+    }
+
+    public int getActiveCount() {
+        return maxConcurrentTasks - permits.availablePermits();
+    }
+
+    /**
+     * Estimated number of tasks waiting for a permit.
+     */
+    public int getQueuedCount() {
+        return permits.getQueueLength();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (queueCapacity > 0 && pending.incrementAndGet() > (long) queueCapacity + maxConcurrentTasks) {
+            pending.decrementAndGet();
+            rejected.increment();
+            throw new RejectedExecutionException("Too many tasks waiting for a permit");
+        }
+        try {
+            delegate.execute(() -> runWithPermit(command));
+        } catch (RejectedExecutionException e) {
+            release();
+            throw e;
+        }
+    }
+
+    private void runWithPermit(Runnable command) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            release();
+            return;
+        }
+        try {
+            command.run();
+        } finally {
+            permits.release();
+            release();
+        }
+    }
+
+    private void release() {
+        if (queueCapacity > 0) {
+            pending.decrementAndGet();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return delegate.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+}
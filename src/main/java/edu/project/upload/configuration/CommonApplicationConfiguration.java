@@ -1,29 +1,80 @@
 package edu.project.upload.configuration;
 
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
-import lombok.SneakyThrows;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
-import java.security.MessageDigest;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 @Configuration
 @Data
 @RequiredArgsConstructor
 public class CommonApplicationConfiguration {
+    static final String EXECUTOR_NAME = "upload";
+
     private final UploadConfiguration uploadConfiguration;
 
     @Bean
     public ExecutorService executorService(){
-        return Executors.newFixedThreadPool(uploadConfiguration.getMaxThreads());
+        int queueCapacity = uploadConfiguration.getAdmission().getQueueCapacity();
+        if (uploadConfiguration.getExecutionMode() == ExecutionMode.VIRTUAL) {
+            ExecutorService executorService = Executors.newThreadPerTaskExecutor(
+                    Thread.ofVirtual().name("upload-virtual-", 0).factory());
+            int maxConcurrentTasks = uploadConfiguration.getMaxConcurrentTasks();
+            if (maxConcurrentTasks <= 0 && queueCapacity > 0) {
+                throw new IllegalStateException("upload.admission.queue-capacity only applies with upload.max-concurrent-tasks in "
+                        + ExecutionMode.VIRTUAL + " mode, set it to 0 or limit the tasks");
+            }
+            // wrapped even without a limit, so the executor meters are bound
+            return new BoundedExecutorService(executorService, maxConcurrentTasks > 0 ? maxConcurrentTasks : Integer.MAX_VALUE,
+                    queueCapacity);
+        }
+        int maxThreads = uploadConfiguration.getMaxThreads();
+        BlockingQueue<Runnable> queue = queueCapacity > 0 ? new LinkedBlockingQueue<>(queueCapacity) : new LinkedBlockingQueue<>();
+        return new ThreadPoolExecutor(maxThreads, maxThreads, 0L, TimeUnit.MILLISECONDS, queue, new CountingAbortPolicy());
     }
 
+    /**
+     * Pool size, active and queued tasks and rejections of the upload executor as {@code executor.*} meters
+     * tagged {@code name=upload}. The executor itself is not wrapped, so tasks run without extra timing.
+     */
     @Bean
-    @SneakyThrows
-    public MessageDigest messageDigest(){
-        return MessageDigest.getInstance(uploadConfiguration.getHashAlgo());
+    public MeterBinder executorServiceMetrics(ExecutorService executorService) {
+        return registry -> {
+            Tags tags = Tags.of("name", EXECUTOR_NAME);
+            if (executorService instanceof ThreadPoolExecutor threadPool) {
+                new ExecutorServiceMetrics(threadPool, EXECUTOR_NAME, Tags.empty()).bindTo(registry);
+                if (threadPool.getRejectedExecutionHandler() instanceof CountingAbortPolicy policy) {
+                    FunctionCounter.builder("executor.rejected", policy, CountingAbortPolicy::getRejectedCount)
+                            .description("Tasks rejected by the executor")
+                            .tags(tags)
+                            .register(registry);
+                }
+            } else if (executorService instanceof BoundedExecutorService bounded) {
+                Gauge.builder("executor.active", bounded, BoundedExecutorService::getActiveCount)
+                        .description("Tasks holding a permit")
+                        .tags(tags)
+                        .register(registry);
+                Gauge.builder("executor.queued", bounded, BoundedExecutorService::getQueuedCount)
+                        .description("Tasks waiting for a permit")
+                        .tags(tags)
+                        .register(registry);
+                FunctionCounter.builder("executor.rejected", bounded, BoundedExecutorService::getRejectedCount)
+                        .description("Tasks rejected by the executor")
+                        .tags(tags)
+                        .register(registry);
+            }
+        };
     }
 }
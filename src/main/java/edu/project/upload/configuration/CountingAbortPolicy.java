@@ -0,0 +1,22 @@
+package edu.project.upload.configuration;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rejects like {@link ThreadPoolExecutor.AbortPolicy} and counts the rejections for the executor metrics.
+ */
+public class CountingAbortPolicy extends ThreadPoolExecutor.AbortPolicy {
+    private final LongAdder rejected = new LongAdder();
+
+    @Override
+    public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+        rejected.increment();
+        super.rejectedExecution(task, executor);
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+}
@@ -0,0 +1,12 @@
+package edu.project.upload.configuration;
+
+public enum ExecutionMode {
+    /**
+     * Fixed pool of {@code upload.max-threads} platform threads.
+     */
+    PLATFORM,
+    /**
+     * One virtual thread per task, optionally capped by {@code upload.max-concurrent-tasks}.
+     */
+    VIRTUAL
+}
@@ -0,0 +1,47 @@
+package edu.project.upload.configuration;
+
+import edu.project.upload.model.ContentBlob;
+import edu.project.upload.model.ContentDeletion;
+import edu.project.upload.model.FileInfo;
+import edu.project.upload.model.UploadSession;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+
+/**
+ * Creates the indexes the queries rely on before the web server starts. The unique ones are what enforces
+ * one file name and one copy of the content per user, so startup fails if existing data violates them.
+ */
+@Slf4j
+@Configuration
+@RequiredArgsConstructor
+public class MongoIndexConfiguration {
+    private final MongoTemplate mongoTemplate;
+
+    @PostConstruct
+    public void createIndexes() {
+        IndexResolver resolver = new MongoPersistentEntityIndexResolver(mongoTemplate.getConverter().getMappingContext());
+        for (Class<?> entity : new Class<?>[]{FileInfo.class, UploadSession.class, ContentBlob.class, ContentDeletion.class}) {
+            IndexOperations indexOperations = mongoTemplate.indexOps(entity);
+            resolver.resolveIndexFor(entity).forEach(index -> {
+                log.debug("Creating index {} on {}", index.getIndexKeys(), entity.getSimpleName());
+                indexOperations.createIndex(index);
+            });
+        }
+        // chunks of upload sessions are written directly, before the driver would create its own GridFS indexes
+        mongoTemplate.indexOps("fs.chunks").createIndex(new Index()
+                .on("files_id", Sort.Direction.ASC)
+                .on("n", Sort.Direction.ASC)
+                .unique());
+        mongoTemplate.indexOps("fs.files").createIndex(new Index()
+                .on("filename", Sort.Direction.ASC)
+                .on("uploadDate", Sort.Direction.ASC));
+    }
+}
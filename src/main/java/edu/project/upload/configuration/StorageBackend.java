@@ -0,0 +1,9 @@
+package edu.project.upload.configuration;
+
+/**
+ * Where file content is kept, metadata always stays in Mongo.
+ */
+public enum StorageBackend {
+    GRIDFS,
+    FILESYSTEM
+}
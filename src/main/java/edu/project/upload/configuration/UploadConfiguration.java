@@ -1,13 +1,246 @@
 package edu.project.upload.configuration;
 
+import edu.project.upload.model.Visibility;
+import edu.project.upload.services.ContentCodec;
+import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
 
 @ConfigurationProperties(prefix = "upload")
 @Data
 @Configuration
 public class UploadConfiguration {
     private int maxThreads;
+    private ExecutionMode executionMode = ExecutionMode.PLATFORM;
+    /**
+     * Cap on concurrently running tasks in {@link ExecutionMode#VIRTUAL} mode, {@code 0} means unlimited, which needs
+     * {@code admission.queue-capacity} to be {@code 0} as well.
+     */
+    private int maxConcurrentTasks = 1_000;
     private String hashAlgo;
+    private boolean singlePassUpload = true;
+    /**
+     * Largest {@code size} of a cursor listing slice.
+     */
+    private int maxPageSize = 1_000;
+    private Storage storage = new Storage();
+    private Session session = new Session();
+    private Tags tags = new Tags();
+    private MetadataCache metadataCache = new MetadataCache();
+    private ContentCache contentCache = new ContentCache();
+    private Admission admission = new Admission();
+    private Batch batch = new Batch();
+    private Archive archive = new Archive();
+    private Compression compression = new Compression();
+    private Reconciler reconciler = new Reconciler();
+    private Deletion deletion = new Deletion();
+    /**
+     * {@code Cache-Control} of downloads per visibility of the file.
+     */
+    private Map<Visibility, String> cacheControl = new EnumMap<>(Map.of(
+            Visibility.PUBLIC, "public, max-age=3600",
+            Visibility.PRIVATE, "private, no-cache"));
+
+    @Data
+    public static class Storage {
+        private StorageBackend backend = StorageBackend.GRIDFS;
+        /**
+         * Directory of the {@link StorageBackend#FILESYSTEM} backend.
+         */
+        private String root = "blobs";
+        private GridFs gridfs = new GridFs();
+    }
+
+    /**
+     * How the {@link StorageBackend#GRIDFS} backend writes uploads.
+     */
+    @Data
+    public static class GridFs {
+        /**
+         * Chunk size by file size: a file gets the chunk size of the largest class whose {@code min-file-size} it
+         * reaches. Larger chunks mean fewer documents and round-trips for big files. Chunk sizes are checked at
+         * startup to lie between 1 byte and 15 MB, below the 16 MB BSON limit.
+         */
+        private List<SizeClass> sizeClasses = List.of(
+                new SizeClass(DataSize.ofBytes(0), DataSize.ofKilobytes(255)),
+                new SizeClass(DataSize.ofMegabytes(64), DataSize.ofMegabytes(1)),
+                new SizeClass(DataSize.ofGigabytes(1), DataSize.ofMegabytes(4)));
+        /**
+         * Chunk size of uploads whose size is not known up front, such as streamed multipart uploads.
+         */
+        private DataSize unknownSizeChunkSize = DataSize.ofMegabytes(1);
+        /**
+         * Chunk bytes sent with one {@code insertMany}, at least one chunk.
+         */
+        private DataSize batchSize = DataSize.ofMegabytes(4);
+        /**
+         * Batches of one upload being inserted at the same time; together with {@code batch-size} this bounds the
+         * memory an upload holds.
+         */
+        private int maxInFlightBatches = 4;
+        /**
+         * Batches of all uploads being inserted at the same time, which bounds the memory of the inserts however many
+         * uploads run, at about this times {@code batch-size}.
+         */
+        private int maxTotalInFlightBatches = 64;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class SizeClass {
+        private DataSize minFileSize;
+        private DataSize chunkSize;
+    }
+
+    @Data
+    public static class Session {
+        /**
+         * Size of every chunk except the last one. Each chunk becomes one GridFS chunk document,
+         * so it has to stay well below the 16 MB BSON limit.
+         */
+        private int chunkSize = 8 * 1024 * 1024;
+        private Duration ttl = Duration.ofHours(24);
+        private Duration cleanupInterval = Duration.ofMinutes(5);
+    }
+
+    @Data
+    public static class Tags {
+        /**
+         * Cron expression for recomputing the per-user tag counts, {@code "-"} disables the job.
+         */
+        private String rebuildCron = "-";
+    }
+
+    @Data
+    public static class MetadataCache {
+        private boolean enabled = true;
+        private long maxSize = 10_000;
+        private Duration ttl = Duration.ofMinutes(10);
+        /**
+         * Invalidates entries changed by other nodes through a change stream on {@code files}, needs a replica set.
+         */
+        private boolean changeStream;
+    }
+
+    /**
+     * Off-heap cache of the content of small public files.
+     */
+    @Data
+    public static class ContentCache {
+        private boolean enabled = true;
+        /**
+         * Memory budget of the cached content, allocated as direct buffers outside the heap.
+         */
+        private DataSize maxSize = DataSize.ofMegabytes(64);
+        /**
+         * Files with more stored bytes than this are never cached.
+         */
+        private DataSize maxFileSize = DataSize.ofKilobytes(64);
+    }
+
+    @Data
+    public static class Admission {
+        /**
+         * Tasks that may wait for the upload executor, {@code 0} means unbounded.
+         */
+        private int queueCapacity = 1_000;
+        /**
+         * Uploads, session chunks and commits of one user running at the same time, {@code 0} means unlimited.
+         */
+        private int maxConcurrentPerUser = 8;
+        /**
+         * Upload bodies being received at the same time, counted by {@code Content-Length}; {@code 0} means unlimited.
+         */
+        private DataSize maxInFlightBytes = DataSize.ofGigabytes(4);
+        /**
+         * {@code Retry-After} sent with rejected requests.
+         */
+        private Duration retryAfter = Duration.ofSeconds(5);
+    }
+
+    @Data
+    public static class Batch {
+        private int maxFiles = 1_000;
+        /**
+         * Files of one batch written to storage at the same time.
+         */
+        private int parallelism = 8;
+    }
+
+    @Data
+    public static class Archive {
+        private int maxFiles = 10_000;
+    }
+
+    @Data
+    public static class Compression {
+        private boolean enabled = true;
+        private ContentCodec codec = ContentCodec.GZIP;
+        /**
+         * Content shorter than this is stored as it is.
+         */
+        private DataSize minSize = DataSize.ofKilobytes(1);
+        /**
+         * Media ranges that are compressed, content types known to be compressed already never are.
+         */
+        private List<String> contentTypes = List.of("text/*", "application/json", "application/*+json",
+                "application/x-ndjson", "application/xml", "application/*+xml", "application/javascript",
+                "application/yaml", "application/x-yaml");
+    }
+
+    @Data
+    public static class Reconciler {
+        private boolean enabled = true;
+        /**
+         * Only reports what would be purged.
+         */
+        private boolean dryRun;
+        private Duration interval = Duration.ofHours(6);
+        /**
+         * Unreferenced content younger than this is left alone, it may belong to an upload that is still committing.
+         * Must exceed {@code spring.mvc.async.request-timeout}, the longest an upload may take.
+         */
+        private Duration gracePeriod = Duration.ofHours(24);
+        private int batchSize = 500;
+        /**
+         * Pause after every batch, which keeps the scans from competing with uploads and downloads.
+         */
+        private Duration batchPause = Duration.ofMillis(100);
+    }
+
+    /**
+     * Background side of deletes: tombstoned files are released and their stored content is deleted from a queue.
+     */
+    @Data
+    public static class Deletion {
+        private Duration pollInterval = Duration.ofSeconds(5);
+        /**
+         * Tombstones and queued contents taken per poll.
+         */
+        private int batchSize = 100;
+        /**
+         * GridFS chunks removed per delete, with {@code chunk-batch-pause} in between.
+         */
+        private int chunkBatchSize = 256;
+        private Duration chunkBatchPause = Duration.ofMillis(20);
+        /**
+         * A tombstone claimed longer ago than this belongs to a worker that died; it is removed without releasing its
+         * content again, the reconciler reclaims whatever that leaks.
+         */
+        private Duration claimTimeout = Duration.ofMinutes(10);
+        /**
+         * Delay before retrying a failed content delete, doubled on every further failure up to {@code max-retry-backoff}.
+         */
+        private Duration retryBackoff = Duration.ofSeconds(30);
+        private Duration maxRetryBackoff = Duration.ofHours(1);
+    }
 }
@@ -0,0 +1,57 @@
+package edu.project.upload.controllers;
+
+import edu.project.upload.configuration.UploadConfiguration;
+import edu.project.upload.services.AdmissionException;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Answers requests turned away by admission control: {@code 429} when the user is over its own limit,
+ * {@code 503} when the node is out of capacity, both with {@code Retry-After}.
+ */
+@Slf4j
+@RestControllerAdvice
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class AdmissionExceptionHandler {
+    private final Duration retryAfter;
+
+    public AdmissionExceptionHandler(UploadConfiguration uploadConfiguration) {
+        this.retryAfter = uploadConfiguration.getAdmission().getRetryAfter();
+    }
+
+    @ExceptionHandler(AdmissionException.class)
+    public ResponseEntity<String> handleAdmission(AdmissionException e) {
+        return ResponseEntity.status(status(e))
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfter().toSeconds()))
+                .body(e.getMessage());
+    }
+
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<String> handleRejectedExecution(RejectedExecutionException e) {
+        log.debug("Executor queue is full: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter.toSeconds()))
+                .body("Server is busy");
+    }
+
+    static void reject(HttpServletResponse response, AdmissionException e) throws IOException {
+        response.setStatus(status(e).value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfter().toSeconds()));
+        response.setHeader(HttpHeaders.CONNECTION, "close");
+        response.getWriter().write(e.getMessage());
+    }
+
+    private static HttpStatus status(AdmissionException e) {
+        return e.isPerUser() ? HttpStatus.TOO_MANY_REQUESTS : HttpStatus.SERVICE_UNAVAILABLE;
+    }
+}
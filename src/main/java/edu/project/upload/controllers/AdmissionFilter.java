@@ -0,0 +1,99 @@
+package edu.project.upload.controllers;
+
+import edu.project.upload.services.AdmissionControl;
+import edu.project.upload.services.AdmissionException;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Charges upload bodies against the in-flight byte budget before the multipart resolver spools them to disk. Only
+ * the upload endpoints are charged; a body of unknown length cannot be charged there and is refused with {@code 411}.
+ * The budget is held until the request, including its async part, has completed. The per-user limit is applied once
+ * the {@code userId} form field is read.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@RequiredArgsConstructor
+public class AdmissionFilter extends OncePerRequestFilter {
+    private static final Set<String> UPLOADS = Set.of("/api/v1/files/upload", "/api/v1/files/upload/batch", "/api/v1/files/upload/stream");
+    private static final Pattern SESSION_CHUNK = Pattern.compile("/api/v1/files/sessions/[^/]+/chunks/[^/]+");
+
+    private final AdmissionControl admissionControl;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String method = request.getMethod();
+        String path = request.getRequestURI();
+        return !(HttpMethod.POST.matches(method) && UPLOADS.contains(path)
+                || HttpMethod.PUT.matches(method) && SESSION_CHUNK.matcher(path).matches());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        long contentLength = request.getContentLengthLong();
+        if (contentLength < 0) {
+            // chunked, or HTTP/2 without the header
+            refuse(response, HttpStatus.LENGTH_REQUIRED, "Content-Length is required");
+            return;
+        }
+        AdmissionControl.Admission admission;
+        try {
+            admission = admissionControl.admitBytes(contentLength);
+        } catch (AdmissionException e) {
+            AdmissionExceptionHandler.reject(response, e);
+            return;
+        }
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new ReleasingListener(admission));
+            } else {
+                admission.close();
+            }
+        }
+    }
+
+    private static void refuse(HttpServletResponse response, HttpStatus status, String message) throws IOException {
+        response.setStatus(status.value());
+        response.setHeader(HttpHeaders.CONNECTION, "close");
+        response.getWriter().write(message);
+    }
+
+    private record ReleasingListener(AdmissionControl.Admission admission) implements AsyncListener {
+        @Override
+        public void onComplete(AsyncEvent event) {
+            admission.close();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            admission.close();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            admission.close();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
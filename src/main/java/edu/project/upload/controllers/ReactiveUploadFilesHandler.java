@@ -0,0 +1,125 @@
+package edu.project.upload.controllers;
+
+import edu.project.upload.model.FileInfo;
+import edu.project.upload.model.Visibility;
+import edu.project.upload.requests.FileChangeVisibilityRequest;
+import edu.project.upload.requests.FileListRequest;
+import edu.project.upload.requests.FileRenameRequest;
+import edu.project.upload.requests.TagsListRequest;
+import edu.project.upload.services.ReactiveUploadService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.web.PagedModel;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.multipart.FilePartEvent;
+import org.springframework.http.codec.multipart.FormPartEvent;
+import org.springframework.http.codec.multipart.PartEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.util.StringUtils;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+/**
+ * WebFlux handlers serving the same REST contract as {@link UploadFilesController}.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveUploadFilesHandler {
+    private final ReactiveUploadService uploadService;
+
+    /**
+     * Streams the multipart body part by part. The form fields have to precede the file part,
+     * which is piped into GridFS as it arrives.
+     */
+    public Mono<ServerResponse> uploadFile(ServerRequest request) {
+        MultiValueMap<String, String> fields = new LinkedMultiValueMap<>();
+        return request.bodyToFlux(PartEvent.class)
+                .windowUntil(PartEvent::isLast)
+                .concatMap(part -> part.<FileInfo>switchOnFirst((signal, events) -> {
+                    PartEvent first = signal.get();
+                    if (first instanceof FilePartEvent filePart) {
+                        log.debug("upload file request: {}", fields);
+                        String contentType = fields.getFirst("contentType");
+                        if (!StringUtils.hasText(contentType) && filePart.headers().getContentType() != null) {
+                            contentType = filePart.headers().getContentType().toString();
+                        }
+                        String visibility = fields.getFirst("visibility");
+                        return uploadService.uploadFile(
+                                fields.getFirst("userId"),
+                                fields.getFirst("fileName"),
+                                visibility != null ? Visibility.parseString(visibility) : null,
+                                fields.get("tags"),
+                                contentType,
+                                events.map(PartEvent::content));
+                    }
+                    if (first instanceof FormPartEvent formPart) {
+                        fields.add(formPart.name(), formPart.value());
+                    }
+                    return events.doOnNext(event -> DataBufferUtils.release(event.content())).then(Mono.empty());
+                }))
+                .next()
+                .switchIfEmpty(Mono.error(() -> new IllegalArgumentException("File part is missing")))
+                .flatMap(fileInfo -> ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).bodyValue(fileInfo));
+    }
+
+    public Mono<ServerResponse> renameFile(ServerRequest request) {
+        String fileId = request.pathVariable("fileId");
+        return request.bodyToMono(FileRenameRequest.class)
+                .doOnNext(body -> log.debug("rename fileId: {}, request: {}", fileId, body))
+                .flatMap(body -> uploadService.renameFile(fileId, body.getNewFileName(), body.getUserId()))
+                .flatMap(fileInfo -> ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).bodyValue(fileInfo));
+    }
+
+    public Mono<ServerResponse> listFiles(ServerRequest request) {
+        return request.bind(FileListRequest.class)
+                .doOnNext(listRequest -> log.debug("list files request: {}", listRequest))
+                .flatMap(listRequest -> uploadService.listFiles(
+                        listRequest.getUserId(),
+                        Visibility.parseString(listRequest.getVisibility()),
+                        listRequest.getTag(),
+                        PageRequest.of(listRequest.getPage(), listRequest.getSize(),
+                                Sort.by(listRequest.getSortDirection(), listRequest.getSortBy()))))
+                .flatMap(page -> ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).bodyValue(new PagedModel<>(page)));
+    }
+
+    public Mono<ServerResponse> listTags(ServerRequest request) {
+        return request.bind(TagsListRequest.class)
+                .doOnNext(tagsRequest -> log.debug("list tags request: {}", tagsRequest))
+                .flatMap(tagsRequest -> tagsRequest.isWithCounts()
+                        ? uploadService.listTagCounts(tagsRequest.getUserId())
+                        : uploadService.listTags(tagsRequest.getUserId()))
+                .flatMap(tags -> ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).bodyValue(tags));
+    }
+
+    public Mono<ServerResponse> deleteFile(ServerRequest request) {
+        String fileId = request.pathVariable("fileId");
+        String userId = request.queryParam("userId")
+                .orElseThrow(() -> new IllegalArgumentException("User should be specified"));
+        log.debug("delete fileId: {}, userId: {}", fileId, userId);
+        return uploadService.deleteFile(fileId, userId)
+                .then(ServerResponse.ok().build());
+    }
+
+    public Mono<ServerResponse> downloadFile(ServerRequest request) {
+        String fileId = request.pathVariable("fileId");
+        log.debug("download fileId: {}", fileId);
+        return uploadService.downloadFile(fileId, request.headers().asHttpHeaders());
+    }
+
+    public Mono<ServerResponse> changeVisibility(ServerRequest request) {
+        String fileId = request.pathVariable("fileId");
+        return request.bodyToMono(FileChangeVisibilityRequest.class)
+                .doOnNext(body -> log.debug("change visibility fileId: {}, request: {}", fileId, body))
+                .flatMap(body -> uploadService.changeVisibility(fileId, body.getUserId(), body.getVisibility()))
+                .flatMap(fileInfo -> ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).bodyValue(fileInfo));
+    }
+}
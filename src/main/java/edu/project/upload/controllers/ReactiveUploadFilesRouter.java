@@ -0,0 +1,29 @@
+package edu.project.upload.controllers;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.server.RequestPredicates;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveUploadFilesRouter {
+
+    @Bean
+    public RouterFunction<ServerResponse> uploadFilesRoutes(ReactiveUploadFilesHandler handler) {
+        return RouterFunctions.route()
+                .path("/api/v1/files", builder -> builder
+                        .POST("/upload", RequestPredicates.contentType(MediaType.MULTIPART_FORM_DATA), handler::uploadFile)
+                        .PATCH("/{fileId}/rename", handler::renameFile)
+                        .GET("/list", handler::listFiles)
+                        .GET("/tags", handler::listTags)
+                        .DELETE("/{fileId}", handler::deleteFile)
+                        .GET("/{fileId}/download", handler::downloadFile)
+                        .PATCH("/{fileId}/visibility", handler::changeVisibility))
+                .build();
+    }
+}
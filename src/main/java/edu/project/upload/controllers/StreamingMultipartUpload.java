@@ -0,0 +1,116 @@
+package edu.project.upload.controllers;
+
+import edu.project.upload.model.FileInfo;
+import edu.project.upload.model.Visibility;
+import edu.project.upload.services.AdmissionControl;
+import edu.project.upload.services.UploadService;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.fileupload2.core.DiskFileItem;
+import org.apache.commons.fileupload2.core.DiskFileItemFactory;
+import org.apache.commons.fileupload2.core.FileItemInput;
+import org.apache.commons.fileupload2.core.FileItemInputIterator;
+import org.apache.commons.fileupload2.core.FileUploadSizeException;
+import org.apache.commons.fileupload2.jakarta.servlet6.JakartaServletFileUpload;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.web.servlet.MultipartProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.util.StringUtils;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads a multipart upload while it arrives: form fields are collected until the {@code file} part starts, whose
+ * stream then goes straight to the upload service. Nothing is spooled, so the fields have to come first. Bodies
+ * over the multipart size limits fail with {@link MaxUploadSizeExceededException}, answered with {@code 413}.
+ */
+@Slf4j
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@RequiredArgsConstructor
+class StreamingMultipartUpload {
+    private static final String FILE_PART = "file";
+    private static final int MAX_FIELD_SIZE = 4096;
+
+    private final UploadService uploadService;
+    private final AdmissionControl admissionControl;
+    private final MultipartProperties multipartProperties;
+
+    FileInfo upload(HttpServletRequest request) {
+        if (!JakartaServletFileUpload.isMultipartContent(request)) {
+            throw new IllegalArgumentException("Multipart request expected");
+        }
+        JakartaServletFileUpload<DiskFileItem, DiskFileItemFactory> fileUpload = new JakartaServletFileUpload<>();
+        fileUpload.setFileSizeMax(multipartProperties.getMaxFileSize().toBytes());
+        fileUpload.setSizeMax(multipartProperties.getMaxRequestSize().toBytes());
+        MultiValueMap<String, String> fields = new LinkedMultiValueMap<>();
+        try {
+            FileItemInputIterator items = fileUpload.getItemIterator(request);
+            while (items.hasNext()) {
+                FileItemInput item = items.next();
+                if (item.isFormField()) {
+                    fields.add(item.getFieldName(), readField(item));
+                } else if (FILE_PART.equals(item.getFieldName())) {
+                    return upload(fields, item);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            FileUploadSizeException tooLarge = sizeLimitCause(e);
+            if (tooLarge != null) {
+                throw new MaxUploadSizeExceededException(tooLarge.getPermitted(), tooLarge);
+            }
+            if (e instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new RuntimeException("Failed to read upload", e);
+        }
+        throw new IllegalArgumentException("File part is missing");
+    }
+
+    /**
+     * The limits are checked while the body is read, so the exception may come wrapped by the upload service.
+     */
+    private static FileUploadSizeException sizeLimitCause(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof FileUploadSizeException sizeException) {
+                return sizeException;
+            }
+        }
+        return null;
+    }
+
+    private FileInfo upload(MultiValueMap<String, String> fields, FileItemInput file) throws IOException {
+        String userId = fields.getFirst("userId");
+        String fileName = fields.getFirst("fileName");
+        if (!StringUtils.hasText(userId) || !StringUtils.hasText(fileName)) {
+            throw new IllegalArgumentException("userId and fileName have to come before the file part");
+        }
+        String visibility = fields.getFirst("visibility");
+        String contentType = fields.getFirst("contentType");
+        if (!StringUtils.hasText(contentType)) {
+            contentType = file.getContentType();
+        }
+        log.debug("streaming upload: {}, userId: {}", fileName, userId);
+        try (AdmissionControl.Admission admission = admissionControl.admitUser(userId);
+             InputStream content = file.getInputStream()) {
+            return uploadService.uploadFile(userId, fileName, visibility != null ? Visibility.parseString(visibility) : null,
+                    fields.get("tags"), contentType, content);
+        }
+    }
+
+    private static String readField(FileItemInput item) throws IOException {
+        try (InputStream inputStream = item.getInputStream()) {
+            byte[] value = inputStream.readNBytes(MAX_FIELD_SIZE + 1);
+            if (value.length > MAX_FIELD_SIZE) {
+                throw new IllegalArgumentException("Form field " + item.getFieldName() + " is too long");
+            }
+            return new String(value, StandardCharsets.UTF_8);
+        }
+    }
+}
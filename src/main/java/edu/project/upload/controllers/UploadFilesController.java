@@ -1,19 +1,29 @@
 package edu.project.upload.controllers;
 
+import edu.project.upload.model.BatchUploadItem;
+import edu.project.upload.model.BulkUpdateResult;
+import edu.project.upload.model.CursorPage;
 import edu.project.upload.model.FileInfo;
 import edu.project.upload.model.Visibility;
 import edu.project.upload.requests.*;
+import edu.project.upload.services.AdmissionControl;
 import edu.project.upload.services.UploadService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.web.config.EnableSpringDataWebSupport;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
@@ -22,22 +32,47 @@ import static org.springframework.data.web.config.EnableSpringDataWebSupport.Pag
 
 @Slf4j
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RequiredArgsConstructor
 @EnableSpringDataWebSupport(pageSerializationMode = VIA_DTO)
 @RequestMapping("/api/v1/files")
 public class UploadFilesController {
     private final UploadService uploadService;
     private final ExecutorService executorService;
+    private final AdmissionControl admissionControl;
+    private final StreamingMultipartUpload streamingMultipartUpload;
 
+    /**
+     * The body was charged by the {@link AdmissionFilter} before the form was spooled, the user is admitted once the
+     * form is read.
+     */
     @PostMapping(path = "/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public CompletableFuture<ResponseEntity<FileInfo>> uploadFile(@ModelAttribute FileUploadRequest fileUpload) {
-        log.debug("upload file request: {}", fileUpload);
-        return CompletableFuture.supplyAsync(() -> {
+        log.debug("upload file: {}, userId: {}", fileUpload.getFileName(), fileUpload.getUserId());
+        return admissionControl.supplyAsync(fileUpload.getUserId(), () -> {
             FileInfo fileInfo = uploadService.uploadFile(fileUpload);
             return ResponseEntity.ok(fileInfo);
         }, executorService);
     }
 
+    @PostMapping(path = "/upload/batch", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public CompletableFuture<ResponseEntity<List<BatchUploadItem>>> uploadFiles(@ModelAttribute FileBatchUploadRequest request) {
+        log.debug("batch upload: {} files, userId: {}", request.getFiles() == null ? 0 : request.getFiles().size(), request.getUserId());
+        return admissionControl.supplyAsync(request.getUserId(),
+                () -> ResponseEntity.ok(uploadService.uploadFiles(request)), executorService);
+    }
+
+    /**
+     * Same form as {@code /upload}, read as it arrives instead of being spooled to a temp file first. Runs on the
+     * request thread: the body can only be read while the client sends it, which neither belongs under the async
+     * request timeout nor should hold a slot of the upload executor.
+     */
+    @PostMapping(path = "/upload/stream", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<FileInfo> uploadFileStream(HttpServletRequest request) {
+        log.debug("streaming upload request, length: {}", request.getContentLengthLong());
+        return ResponseEntity.ok(streamingMultipartUpload.upload(request));
+    }
+
     @PatchMapping(path = "/{fileId}/rename", produces = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<FileInfo> rename(@PathVariable String fileId, @RequestBody FileRenameRequest fileRenameRequest) {
         log.debug("rename fileId: {}, request: {}", fileId, fileRenameRequest);
@@ -57,9 +92,18 @@ public class UploadFilesController {
         return ResponseEntity.ok(files);
     }
 
+    @GetMapping("/list/cursor")
+    public ResponseEntity<CursorPage<FileInfo>> listFilesByCursor(@ModelAttribute FileListRequest request) {
+        log.debug("list files by cursor request: {}", request);
+        return ResponseEntity.ok(uploadService.listFiles(request));
+    }
+
     @GetMapping("/tags")
-    public ResponseEntity<Set<String>> listTags(@ModelAttribute TagsListRequest tagsListRequest) {
+    public ResponseEntity<?> listTags(@ModelAttribute TagsListRequest tagsListRequest) {
         log.debug("list tags request: {}", tagsListRequest);
+        if (tagsListRequest.isWithCounts()) {
+            return ResponseEntity.ok(uploadService.listTagCounts(tagsListRequest.getUserId()));
+        }
         Set<String> tags = uploadService.listTags(tagsListRequest.getUserId());
         return ResponseEntity.ok(tags);
     }
@@ -71,10 +115,39 @@ public class UploadFilesController {
         return ResponseEntity.ok().build();
     }
 
+    @PostMapping(path = "/bulk/delete", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<BulkUpdateResult> deleteFiles(@RequestBody FileBulkRequest request) {
+        log.debug("bulk delete request: {}", request);
+        return ResponseEntity.ok(uploadService.deleteFiles(request));
+    }
+
+    @PostMapping(path = "/bulk/visibility", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<BulkUpdateResult> changeVisibility(@RequestBody FileBulkRequest request) {
+        log.debug("bulk visibility request: {}", request);
+        return ResponseEntity.ok(uploadService.changeVisibility(request));
+    }
+
+    @PostMapping(path = "/bulk/tags", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<BulkUpdateResult> updateTags(@RequestBody FileBulkRequest request) {
+        log.debug("bulk tags request: {}", request);
+        return ResponseEntity.ok(uploadService.updateTags(request));
+    }
+
     @GetMapping("/{fileId}/download")
-    public CompletableFuture<ResponseEntity<?>> downloadFile(@PathVariable String fileId) {
-        log.debug("download fileId: {}", fileId);
-        return CompletableFuture.supplyAsync(() -> uploadService.downloadFile(fileId), executorService);
+    public CompletableFuture<ResponseEntity<?>> downloadFile(@PathVariable String fileId, @RequestHeader HttpHeaders headers) {
+        log.debug("download fileId: {}, range: {}", fileId, headers.getFirst(HttpHeaders.RANGE));
+        return CompletableFuture.supplyAsync(() -> uploadService.downloadFile(fileId, headers), executorService);
+    }
+
+    /**
+     * Written on the request thread rather than as a streaming body, which would be cut off by the async request timeout.
+     */
+    @GetMapping("/archive")
+    public void downloadArchive(@ModelAttribute FileArchiveRequest request, HttpServletResponse response) throws IOException {
+        log.debug("archive request: {}", request);
+        response.setContentType(request.getFormat().getContentType());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"files." + request.getFormat().getExtension() + "\"");
+        uploadService.writeArchive(request, response.getOutputStream());
     }
 
     @PatchMapping(path = "/{fileId}/visibility", produces = MediaType.APPLICATION_JSON_VALUE)
@@ -0,0 +1,65 @@
+package edu.project.upload.controllers;
+
+import edu.project.upload.model.FileInfo;
+import edu.project.upload.model.UploadSession;
+import edu.project.upload.requests.UploadSessionCreateRequest;
+import edu.project.upload.services.AdmissionControl;
+import edu.project.upload.services.UploadSessionService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+@Slf4j
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@RequiredArgsConstructor
+@RequestMapping("/api/v1/files/sessions")
+public class UploadSessionsController {
+    private final UploadSessionService uploadSessionService;
+    private final ExecutorService executorService;
+    private final AdmissionControl admissionControl;
+
+    @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<UploadSession> createSession(@RequestBody UploadSessionCreateRequest request) {
+        log.debug("create upload session request: {}", request);
+        return ResponseEntity.ok(uploadSessionService.createSession(request));
+    }
+
+    @GetMapping(path = "/{sessionId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<UploadSession> getSession(@PathVariable String sessionId, @RequestParam String userId) {
+        log.debug("get upload session: {}, userId: {}", sessionId, userId);
+        return ResponseEntity.ok(uploadSessionService.getSession(sessionId, userId));
+    }
+
+    @PutMapping(path = "/{sessionId}/chunks/{chunkNumber}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public CompletableFuture<ResponseEntity<UploadSession>> uploadChunk(@PathVariable String sessionId,
+                                                                        @PathVariable int chunkNumber,
+                                                                        @RequestParam String userId,
+                                                                        @RequestBody byte[] data) {
+        log.debug("upload chunk: {} of session: {}, size: {}", chunkNumber, sessionId, data.length);
+        return admissionControl.supplyAsync(userId,
+                () -> ResponseEntity.ok(uploadSessionService.uploadChunk(sessionId, userId, chunkNumber, data)),
+                executorService);
+    }
+
+    @PostMapping(path = "/{sessionId}/commit", produces = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<ResponseEntity<FileInfo>> commitSession(@PathVariable String sessionId, @RequestParam String userId) {
+        log.debug("commit upload session: {}, userId: {}", sessionId, userId);
+        return admissionControl.supplyAsync(userId,
+                () -> ResponseEntity.ok(uploadSessionService.commitSession(sessionId, userId)),
+                executorService);
+    }
+
+    @DeleteMapping(path = "/{sessionId}")
+    public ResponseEntity<Void> abortSession(@PathVariable String sessionId, @RequestParam String userId) {
+        log.debug("abort upload session: {}, userId: {}", sessionId, userId);
+        uploadSessionService.abortSession(sessionId, userId);
+        return ResponseEntity.ok().build();
+    }
+}
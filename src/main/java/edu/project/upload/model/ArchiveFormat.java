@@ -0,0 +1,22 @@
+package edu.project.upload.model;
+
+public enum ArchiveFormat {
+    ZIP("zip", "application/zip"),
+    TAR("tar", "application/x-tar");
+
+    private final String extension;
+    private final String contentType;
+
+    ArchiveFormat(String extension, String contentType) {
+        this.extension = extension;
+        this.contentType = contentType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+}
@@ -0,0 +1,17 @@
+package edu.project.upload.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Outcome of one file of a batch upload: {@code status} is the HTTP status the file would have got on its own,
+ * {@code fileInfo} is set when it was created and {@code error} when it was not.
+ */
+@Data
+@AllArgsConstructor
+public class BatchUploadItem {
+    private String fileName;
+    private int status;
+    private FileInfo fileInfo;
+    private String error;
+}
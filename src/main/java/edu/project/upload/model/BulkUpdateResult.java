@@ -0,0 +1,14 @@
+package edu.project.upload.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Files a bulk operation selected and the ones it actually changed or deleted.
+ */
+@Data
+@AllArgsConstructor
+public class BulkUpdateResult {
+    private long matched;
+    private long modified;
+}
@@ -0,0 +1,27 @@
+package edu.project.upload.model;
+
+import lombok.Builder;
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+import java.time.LocalDateTime;
+
+/**
+ * One stored copy of a piece of content, shared by every {@link FileInfo} with the same hash.
+ */
+@Data
+@Builder(toBuilder = true)
+@Document(collection = "blobs")
+@CompoundIndex(name = "storage_key", def = "{'gridFsId': 1}")
+public class ContentBlob {
+    @Id
+    private String hash;
+    @Field("gridFsId")
+    private String storageKey;
+    private long size;
+    private long refCount;
+    private LocalDateTime createdDate;
+}
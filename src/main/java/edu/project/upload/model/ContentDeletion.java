@@ -0,0 +1,25 @@
+package edu.project.upload.model;
+
+import lombok.Builder;
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Stored content that nothing references any more and that is waiting to be deleted in the background.
+ */
+@Data
+@Builder(toBuilder = true)
+@Document(collection = "content_deletions")
+@CompoundIndex(name = "next_attempt", def = "{'nextAttemptAt': 1}")
+public class ContentDeletion {
+    @Id
+    private String storageKey;
+    private LocalDateTime enqueuedAt;
+    private LocalDateTime nextAttemptAt;
+    private int attempts;
+    private String lastError;
+}
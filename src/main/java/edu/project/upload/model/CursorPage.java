@@ -0,0 +1,19 @@
+package edu.project.upload.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Slice of a keyset-paginated listing. {@code nextCursor} is {@code null} on the last slice and
+ * {@code totalElements} is only filled in when the count was requested.
+ */
+@Data
+@AllArgsConstructor
+public class CursorPage<T> {
+    private List<T> content;
+    private int size;
+    private String nextCursor;
+    private Long totalElements;
+}
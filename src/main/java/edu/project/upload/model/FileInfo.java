@@ -3,7 +3,10 @@ package edu.project.upload.model;
 import lombok.Builder;
 import lombok.Data;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
 
 import java.time.LocalDateTime;
 import java.util.Set;
@@ -11,7 +14,20 @@ import java.util.Set;
 @Data
 @Builder(toBuilder = true)
 @Document(collection = "files")
+@CompoundIndexes({
+        @CompoundIndex(name = FileInfo.USER_FILE_NAME_INDEX, def = "{'userId': 1, 'fileName': 1}", unique = true),
+        @CompoundIndex(name = FileInfo.USER_HASH_INDEX, def = "{'userId': 1, 'hash': 1}", unique = true),
+        @CompoundIndex(name = "visibility_file_name", def = "{'visibility': 1, 'fileName': 1, '_id': 1}"),
+        @CompoundIndex(name = "visibility_tags_file_name", def = "{'visibility': 1, 'tags': 1, 'fileName': 1, '_id': 1}"),
+        @CompoundIndex(name = "user_tags_file_name", def = "{'userId': 1, 'tags': 1, 'fileName': 1, '_id': 1}"),
+        @CompoundIndex(name = "storage_key", def = "{'gridFsId': 1}"),
+        @CompoundIndex(name = "deleted_at", def = "{'deletedAt': 1}", sparse = true),
+        @CompoundIndex(name = "tag_deltas_op", def = "{'tagDeltas.op': 1}", sparse = true)
+})
 public class FileInfo {
+    public static final String USER_FILE_NAME_INDEX = "user_file_name";
+    public static final String USER_HASH_INDEX = "user_hash";
+
     @Id
     private String fileId;
     private String userId;
@@ -21,7 +37,31 @@ public class FileInfo {
     private Visibility visibility;
     private LocalDateTime uploadDate;
     private String hash;
+    /**
+     * Algorithm of {@link #hash}, missing for files hashed before it was recorded (the configured {@code upload.hashAlgo}).
+     */
+    private String hashAlgo;
     private String contentType;
     private String downloadLink;
-    private String gridFsId;
+    /**
+     * Key of the content in the configured storage backend, kept under its original field name.
+     */
+    @Field("gridFsId")
+    private String storageKey;
+    /**
+     * Set by a delete: the file is hidden from then on and removed with its content in the background.
+     */
+    private LocalDateTime deletedAt;
+    /**
+     * When a deletion worker took the file, so no other instance releases its content as well.
+     */
+    private LocalDateTime deletionClaimedAt;
+    /**
+     * Identifies the claim that set {@link #deletionClaimedAt}, so a worker reads back exactly the files it claimed.
+     */
+    private String deletionClaimId;
+    /**
+     * Set once the deletion worker released the content, so a claim that went stale afterwards is not released again.
+     */
+    private boolean deletionReleased;
 }
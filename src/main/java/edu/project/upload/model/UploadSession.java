@@ -0,0 +1,37 @@
+package edu.project.upload.model;
+
+import lombok.Builder;
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.Set;
+
+/**
+ * Resumable upload in progress. Chunk {@code n} covers bytes {@code [n * chunkSize, (n + 1) * chunkSize)} and is
+ * staged straight into GridFS as chunk {@code n} of {@code gridFsId}. On commit the files document is created, or,
+ * with another storage backend, the chunks are copied there and dropped.
+ */
+@Data
+@Builder(toBuilder = true)
+@Document(collection = "upload_sessions")
+public class UploadSession {
+    @Id
+    private String sessionId;
+    private String userId;
+    private String fileName;
+    private Set<String> tags;
+    private Visibility visibility;
+    private String contentType;
+    private long fileSize;
+    private int chunkSize;
+    private int totalChunks;
+    private String gridFsId;
+    private Set<Integer> receivedChunks;
+    private UploadSessionState state;
+    private LocalDateTime createdDate;
+    @Indexed
+    private LocalDateTime expiresAt;
+}
@@ -0,0 +1,6 @@
+package edu.project.upload.model;
+
+public enum UploadSessionState {
+    OPEN,
+    COMMITTING
+}
@@ -0,0 +1,27 @@
+package edu.project.upload.model;
+
+import lombok.Builder;
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * Number of files per tag of one user, kept up to date on upload and delete. Tags are stored as field names,
+ * so {@code .}, {@code $} and {@code %} are percent-encoded.
+ */
+@Data
+@Builder(toBuilder = true)
+@Document(collection = "user_tags")
+public class UserTags {
+    @Id
+    private String userId;
+    private Map<String, Long> counts;
+    private LocalDateTime rebuiltAt;
+    /**
+     * Incremented by every change of the counts, so a recount only replaces counts that did not change meanwhile.
+     */
+    private Long version;
+}
@@ -10,17 +10,17 @@ import java.util.Set;
 
 public interface FileInfoRepository extends MongoRepository<FileInfo, String> {
 
-    @Query("{ 'userId': ?0, 'tags': { $in: ?1 } }")
+    @Query("{ 'userId': ?0, 'tags': { $in: ?1 }, 'deletedAt': null }")
     Page<FileInfo> findByUserIdAndTagsInIgnoreCase(String userId, Set<String> tags, Pageable pageable);
 
-    @Query("{ 'visibility': ?0, 'tags': { $in: ?1 } }")
+    @Query("{ 'visibility': ?0, 'tags': { $in: ?1 }, 'deletedAt': null }")
     Page<FileInfo> findByVisibilityAndTagsInIgnoreCase(String visibility, Set<String> tags, Pageable pageable);
 
-    Page<FileInfo> findByVisibility(String visibility, Pageable pageable);
+    Page<FileInfo> findByVisibilityAndDeletedAtIsNull(String visibility, Pageable pageable);
 
-    Page<FileInfo> findByUserId(String userId, Pageable pageable);
+    Page<FileInfo> findByUserIdAndDeletedAtIsNull(String userId, Pageable pageable);
 
-    boolean existsByUserIdAndFileName(String userId, String fileName);
+    boolean existsByUserIdAndFileNameAndDeletedAtIsNull(String userId, String fileName);
 
     boolean existsByUserIdAndHash(String userId, String hash);
 }
\ No newline at end of file
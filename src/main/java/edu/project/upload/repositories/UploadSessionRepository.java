@@ -0,0 +1,12 @@
+package edu.project.upload.repositories;
+
+import edu.project.upload.model.UploadSession;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface UploadSessionRepository extends MongoRepository<UploadSession, String> {
+
+    List<UploadSession> findTop100ByExpiresAtBefore(LocalDateTime dateTime);
+}
@@ -0,0 +1,22 @@
+package edu.project.upload.requests;
+
+import edu.project.upload.model.ArchiveFormat;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * Files to archive, either by {@code fileIds} or by the filters of the file listing. Only public files and files
+ * of {@code userId} are included.
+ */
+@Data
+@EqualsAndHashCode(callSuper = true)
+@ToString(callSuper = true)
+public class FileArchiveRequest extends BaseRequest {
+    private List<String> fileIds;
+    private String visibility;
+    private String tag;
+    private ArchiveFormat format = ArchiveFormat.ZIP;
+}
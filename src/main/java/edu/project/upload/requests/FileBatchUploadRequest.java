@@ -0,0 +1,21 @@
+package edu.project.upload.requests;
+
+import edu.project.upload.model.Visibility;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.List;
+
+/**
+ * Many files of one user, named after their parts' file names. Visibility and tags apply to every file.
+ */
+@Data
+@EqualsAndHashCode(callSuper = true)
+@ToString(callSuper = true)
+public class FileBatchUploadRequest extends BaseRequest {
+    private Visibility visibility;
+    private List<String> tags;
+    private List<MultipartFile> files;
+}
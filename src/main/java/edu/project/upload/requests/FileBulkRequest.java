@@ -0,0 +1,23 @@
+package edu.project.upload.requests;
+
+import edu.project.upload.model.Visibility;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * Selects files of {@code userId} either by {@code fileIds} or by {@code tag}, plus what to change on them.
+ */
+@Data
+@EqualsAndHashCode(callSuper = true)
+@ToString(callSuper = true)
+public class FileBulkRequest extends BaseRequest {
+    private List<String> fileIds;
+    private String tag;
+
+    private Visibility visibility;
+    private List<String> addTags;
+    private List<String> removeTags;
+}
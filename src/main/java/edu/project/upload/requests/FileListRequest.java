@@ -18,4 +18,10 @@ public class FileListRequest extends BaseRequest {
     private String sortBy = "fileName";
     private Sort.Direction sortDirection = Sort.Direction.ASC;
 
+    /**
+     * Continuation token of the cursor listing, empty for the first slice.
+     */
+    private String cursor;
+    private boolean withCount;
+
 }
\ No newline at end of file
@@ -9,5 +9,5 @@ import org.springframework.data.domain.Sort;
 @EqualsAndHashCode(callSuper = true)
 @ToString(callSuper = true)
 public class TagsListRequest extends BaseRequest {
-
+    private boolean withCounts;
 }
\ No newline at end of file
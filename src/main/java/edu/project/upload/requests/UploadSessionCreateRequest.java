@@ -0,0 +1,19 @@
+package edu.project.upload.requests;
+
+import edu.project.upload.model.Visibility;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+import java.util.List;
+
+@Data
+@EqualsAndHashCode(callSuper = true)
+@ToString(callSuper = true)
+public class UploadSessionCreateRequest extends BaseRequest {
+    private String fileName;
+    private Visibility visibility;
+    private List<String> tags;
+    private String contentType;
+    private long fileSize;
+}
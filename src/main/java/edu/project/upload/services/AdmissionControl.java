@@ -0,0 +1,127 @@
+package edu.project.upload.services;
+
+import edu.project.upload.configuration.UploadConfiguration;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Admits requests against a per-user concurrency limit and a node-wide budget of upload bytes in flight,
+ * failing fast with an {@link AdmissionException} instead of letting work pile up.
+ */
+@Service
+@Slf4j
+public class AdmissionControl {
+    private final UploadConfiguration.Admission config;
+    private final Map<String, Integer> running = new ConcurrentHashMap<>();
+    private final AtomicLong bytesInFlight = new AtomicLong();
+    private final Counter userRejections;
+    private final Counter byteRejections;
+
+    public AdmissionControl(UploadConfiguration uploadConfiguration, MeterRegistry meterRegistry) {
+        this.config = uploadConfiguration.getAdmission();
+        userRejections = Counter.builder("upload.admission.rejected")
+                .description("Requests rejected by admission control")
+                .tag("reason", "user")
+                .register(meterRegistry);
+        byteRejections = Counter.builder("upload.admission.rejected")
+                .description("Requests rejected by admission control")
+                .tag("reason", "bytes")
+                .register(meterRegistry);
+        Gauge.builder("upload.admission.bytes", bytesInFlight, AtomicLong::get)
+                .description("Upload bytes admitted and not yet finished")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Runs the task on the executor once the user is admitted; the user's slot is held until the task completes.
+     * A full executor queue surfaces as {@link java.util.concurrent.RejectedExecutionException}.
+     */
+    public <T> CompletableFuture<T> supplyAsync(String userId, Supplier<T> task, ExecutorService executorService) {
+        Admission admission = admitUser(userId);
+        try {
+            return CompletableFuture.supplyAsync(task, executorService).whenComplete((result, e) -> admission.close());
+        } catch (RuntimeException e) {
+            admission.close();
+            throw e;
+        }
+    }
+
+    public Admission admitUser(String userId) {
+        int limit = config.getMaxConcurrentPerUser();
+        if (limit <= 0 || !StringUtils.hasText(userId)) {
+            return Admission.NONE;
+        }
+        AtomicBoolean admitted = new AtomicBoolean();
+        running.compute(userId, (user, count) -> {
+            int current = count == null ? 0 : count;
+            if (current >= limit) {
+                return count;
+            }
+            admitted.set(true);
+            return current + 1;
+        });
+        if (!admitted.get()) {
+            userRejections.increment();
+            log.debug("Rejecting request of user {}: {} requests running", userId, limit);
+            throw new AdmissionException("Too many concurrent requests for user", true, config.getRetryAfter());
+        }
+        return new Admission(() -> running.computeIfPresent(userId, (user, count) -> count > 1 ? count - 1 : null));
+    }
+
+    /**
+     * Reserves {@code bytes} of the in-flight budget. A single request larger than the whole budget is admitted
+     * while nothing else is in flight, so it is never starved.
+     */
+    public Admission admitBytes(long bytes) {
+        long budget = config.getMaxInFlightBytes().toBytes();
+        if (budget <= 0 || bytes <= 0) {
+            return Admission.NONE;
+        }
+        while (true) {
+            long current = bytesInFlight.get();
+            if (current > 0 && current + bytes > budget) {
+                byteRejections.increment();
+                log.debug("Rejecting request of {} bytes: {} bytes in flight", bytes, current);
+                throw new AdmissionException("Too many bytes in flight", false, config.getRetryAfter());
+            }
+            if (bytesInFlight.compareAndSet(current, current + bytes)) {
+                return new Admission(() -> bytesInFlight.addAndGet(-bytes));
+            }
+        }
+    }
+
+    /**
+     * Releases what was admitted; closing more than once has no effect.
+     */
+    public static final class Admission implements AutoCloseable {
+        static final Admission NONE = new Admission(() -> {
+        });
+
+        private final Runnable release;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Admission(Runnable release) {
+            this.release = release;
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                release.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package edu.project.upload.services;
+
+import java.time.Duration;
+
+/**
+ * A request was turned away by admission control. {@code perUser} separates a client that is over its own
+ * limit from a node that is out of capacity.
+ */
+public class AdmissionException extends RuntimeException {
+    private final boolean perUser;
+    private final Duration retryAfter;
+
+    public AdmissionException(String message, boolean perUser, Duration retryAfter) {
+        super(message);
+        this.perUser = perUser;
+        this.retryAfter = retryAfter;
+    }
+
+    public boolean isPerUser() {
+        return perUser;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
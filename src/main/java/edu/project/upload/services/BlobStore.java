@@ -0,0 +1,40 @@
+package edu.project.upload.services;
+
+import java.util.Collection;
+import java.util.Optional;
+
+public interface BlobStore {
+    /**
+     * Takes a reference on the blob with this hash if one is stored already and returns its storage key.
+     */
+    Optional<String> reference(String hash);
+
+    /**
+     * Registers freshly stored content. If the hash is already known the fresh copy is queued for deletion
+     * and a reference on the existing blob is returned instead.
+     */
+    String register(String hash, String storageKey, long size);
+
+    /**
+     * Drops one reference and queues the stored content for deletion when it was the last one.
+     */
+    void release(String hash, String storageKey);
+
+    /**
+     * {@link #release} for many files at once, one reference per file; files sharing a blob appear once each.
+     */
+    void releaseAll(Collection<Reference> references);
+
+    /**
+     * Queues the content of the references that have no blob for deletion, which is safe to repeat. References to a
+     * blob are left alone: whether their decrement already happened is unknown, and a leaked reference is reclaimed
+     * by the reconciler once no file points at the blob.
+     */
+    void releaseUnshared(Collection<Reference> references);
+
+    /**
+     * The content a file references: its hash and the storage key it was stored under.
+     */
+    record Reference(String hash, String storageKey) {
+    }
+}
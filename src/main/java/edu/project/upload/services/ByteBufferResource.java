@@ -0,0 +1,68 @@
+package edu.project.upload.services;
+
+import org.springframework.core.io.AbstractResource;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Seekable resource over an in-memory buffer, every stream reads its own view of it.
+ */
+class ByteBufferResource extends AbstractResource {
+    private final ByteBuffer buffer;
+
+    ByteBufferResource(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        ByteBuffer view = buffer.duplicate();
+        return new InputStream() {
+            @Override
+            public int read() {
+                return view.hasRemaining() ? view.get() & 0xFF : -1;
+            }
+
+            @Override
+            public int read(byte[] bytes, int offset, int length) {
+                if (length == 0) {
+                    return 0;
+                }
+                if (!view.hasRemaining()) {
+                    return -1;
+                }
+                int read = Math.min(length, view.remaining());
+                view.get(bytes, offset, read);
+                return read;
+            }
+
+            @Override
+            public long skip(long n) {
+                int skipped = (int) Math.max(0, Math.min(n, view.remaining()));
+                view.position(view.position() + skipped);
+                return skipped;
+            }
+
+            @Override
+            public int available() {
+                return view.remaining();
+            }
+        };
+    }
+
+    @Override
+    public boolean exists() {
+        return true;
+    }
+
+    @Override
+    public long contentLength() {
+        return buffer.remaining();
+    }
+
+    @Override
+    public String getDescription() {
+        return "buffer of " + buffer.remaining() + " bytes";
+    }
+}
@@ -0,0 +1,97 @@
+package edu.project.upload.services;
+
+import edu.project.upload.model.FileInfo;
+import org.springframework.http.HttpHeaders;
+import org.springframework.util.StringUtils;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+/**
+ * Validators and precondition checks of RFC 9110 for downloads. The content hash is a strong ETag because
+ * a file's content never changes, and the upload date is its Last-Modified. Compressed bytes sent as they are
+ * form a different representation and get the content coding appended to their ETag.
+ */
+final class ConditionalDownloads {
+    private ConditionalDownloads() {
+    }
+
+    static String etag(FileInfo fileInfo) {
+        return "\"" + fileInfo.getHash() + "\"";
+    }
+
+    static String etag(FileInfo fileInfo, ContentCodec codec) {
+        return "\"" + fileInfo.getHash() + "-" + codec.getContentEncoding() + "\"";
+    }
+
+    static Instant lastModified(FileInfo fileInfo) {
+        return fileInfo.getUploadDate().atZone(ZoneId.systemDefault()).toInstant().truncatedTo(ChronoUnit.SECONDS);
+    }
+
+    static void validatorHeaders(HttpHeaders headers, FileInfo fileInfo, String cacheControl) {
+        validatorHeaders(headers, fileInfo, cacheControl, null);
+    }
+
+    /**
+     * @param sentCodec codec of the sent bytes, {@code null} when they are the content itself
+     */
+    static void validatorHeaders(HttpHeaders headers, FileInfo fileInfo, String cacheControl, ContentCodec sentCodec) {
+        headers.setETag(sentCodec == null ? etag(fileInfo) : etag(fileInfo, sentCodec));
+        headers.setLastModified(lastModified(fileInfo));
+        if (StringUtils.hasText(cacheControl)) {
+            headers.setCacheControl(cacheControl);
+        }
+    }
+
+    /**
+     * If-None-Match wins over If-Modified-Since, which is only consulted without it.
+     */
+    static boolean isNotModified(HttpHeaders requestHeaders, FileInfo fileInfo) {
+        List<String> ifNoneMatch = requestHeaders.getIfNoneMatch();
+        if (!ifNoneMatch.isEmpty()) {
+            return ifNoneMatch.stream().anyMatch(tag -> "*".equals(tag) || matches(stripWeak(tag), fileInfo));
+        }
+        long ifModifiedSince = requestHeaders.getIfModifiedSince();
+        return ifModifiedSince != -1 && lastModified(fileInfo).toEpochMilli() <= ifModifiedSince;
+    }
+
+    /**
+     * A Range request only gets partial content while its If-Range still matches, strong comparison only.
+     */
+    static boolean rangeApplies(HttpHeaders requestHeaders, FileInfo fileInfo) {
+        String ifRange = requestHeaders.getFirst(HttpHeaders.IF_RANGE);
+        if (!StringUtils.hasText(ifRange)) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return etag(fileInfo).equals(ifRange);
+        }
+        try {
+            Instant date = ZonedDateTime.parse(ifRange, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            return date.equals(lastModified(fileInfo));
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    private static boolean matches(String tag, FileInfo fileInfo) {
+        if (etag(fileInfo).equals(tag)) {
+            return true;
+        }
+        for (ContentCodec codec : ContentCodec.values()) {
+            if (etag(fileInfo, codec).equals(tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String stripWeak(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+}
@@ -0,0 +1,131 @@
+package edu.project.upload.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import edu.project.upload.configuration.UploadConfiguration;
+import edu.project.upload.model.FileInfo;
+import edu.project.upload.model.Visibility;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.function.Supplier;
+
+/**
+ * Off-heap cache of the stored bytes of small public files, so their downloads skip the storage backend. Entries are
+ * read-only direct buffers weighed by their size against {@code upload.content-cache.max-size}. A file is only read
+ * into a buffer the second time it is requested while its key is still remembered, and Caffeine's W-TinyLFU policy
+ * only keeps a new entry over an older one when it is requested more often, so a scan of files downloaded once neither
+ * allocates direct memory nor flushes the popular ones.
+ * <p>
+ * Entries are keyed by hash, files with the same content share one entry. Content hashed with an algorithm whose
+ * collisions can be crafted is keyed by its storage key instead. Content never changes under its key, so nothing has
+ * to be invalidated; a deleted file is not found before its content is looked up.
+ */
+@Service
+@Slf4j
+public class ContentCache {
+    static final String CACHE_NAME = "file_contents";
+    private static final long SEEN_KEYS_PER_ENTRY = 8;
+
+    private final UploadConfiguration.ContentCache config;
+    private final String hashAlgo;
+    private final Cache<String, CachedContent> cache;
+    /**
+     * Keys requested once, without their content, so only files requested again are read into the cache.
+     */
+    private final Cache<String, Boolean> seen;
+
+    public ContentCache(UploadConfiguration uploadConfiguration, MeterRegistry meterRegistry) {
+        this.config = uploadConfiguration.getContentCache();
+        this.hashAlgo = uploadConfiguration.getHashAlgo();
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(config.getMaxSize().toBytes())
+                .weigher((String key, CachedContent content) -> content.content().capacity())
+                .recordStats()
+                .build();
+        this.seen = Caffeine.newBuilder()
+                .maximumSize(SEEN_KEYS_PER_ENTRY * Math.max(1, config.getMaxSize().toBytes() / Math.max(1, config.getMaxFileSize().toBytes())))
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+        Gauge.builder("cache.hit.ratio", cache, cached -> cached.stats().hitRate())
+                .description("Share of lookups served from the cache")
+                .tag("cache", CACHE_NAME)
+                .register(meterRegistry);
+        Gauge.builder("cache.weighted.size", cache,
+                        cached -> cached.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L))
+                .description("Bytes of content held by the cache")
+                .baseUnit("bytes")
+                .tag("cache", CACHE_NAME)
+                .register(meterRegistry);
+    }
+
+    /**
+     * The stored bytes of the file, read from {@code stored} on a miss. A file is only copied into the cache on a
+     * repeated access; its first one just records the key and is served from {@code stored}, so files downloaded
+     * once never allocate a direct buffer.
+     *
+     * @return {@code null} when the file is not cacheable or not requested before
+     */
+    CachedContent get(FileInfo fileInfo, StoredObject storedObject, Supplier<Resource> stored) throws IOException {
+        if (!isCacheable(fileInfo, storedObject)) {
+            return null;
+        }
+        String key = key(fileInfo);
+        if (cache.policy().getIfPresentQuietly(key) == null && seen.asMap().putIfAbsent(key, Boolean.TRUE) == null) {
+            return null;
+        }
+        try {
+            return cache.get(key, ignored -> load(fileInfo, storedObject, stored));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private CachedContent load(FileInfo fileInfo, StoredObject storedObject, Supplier<Resource> stored) {
+        ByteBuffer content = ByteBuffer.allocateDirect((int) storedObject.length());
+        try (ReadableByteChannel channel = Channels.newChannel(stored.get().getInputStream())) {
+            while (content.hasRemaining() && channel.read(content) >= 0) {
+                // reads straight into the direct buffer, without a heap copy of the whole content
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (content.hasRemaining()) {
+            throw new UncheckedIOException(new IOException("Stored content of file " + fileInfo.getFileId() + " ended after "
+                    + content.position() + " of " + storedObject.length() + " bytes"));
+        }
+        log.debug("Cached {} bytes of file {}", content.limit(), fileInfo.getFileId());
+        return new CachedContent(content.flip().asReadOnlyBuffer(), storedObject.codec().orElse(null));
+    }
+
+    private boolean isCacheable(FileInfo fileInfo, StoredObject storedObject) {
+        return config.isEnabled()
+                && fileInfo.getVisibility() == Visibility.PUBLIC
+                && storedObject.length() <= config.getMaxFileSize().toBytes();
+    }
+
+    private String key(FileInfo fileInfo) {
+        String algorithm = fileInfo.getHashAlgo() != null ? fileInfo.getHashAlgo() : hashAlgo;
+        return HashAlgorithms.isCollisionResistant(algorithm)
+                ? algorithm + ":" + fileInfo.getHash()
+                : "storage:" + fileInfo.getStorageKey();
+    }
+
+    /**
+     * Stored bytes of a file, still encoded with {@code codec} when the content is stored compressed.
+     */
+    record CachedContent(ByteBuffer content, ContentCodec codec) {
+        Resource resource() {
+            return new ByteBufferResource(content);
+        }
+    }
+}
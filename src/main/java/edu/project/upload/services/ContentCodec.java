@@ -0,0 +1,107 @@
+package edu.project.upload.services;
+
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorInputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorOutputStream;
+import org.springframework.http.HttpHeaders;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compression content can be stored with. The name in {@link #getContentEncoding()} is the HTTP content coding, so
+ * stored bytes can be sent as they are to clients accepting it.
+ */
+public enum ContentCodec {
+    GZIP("gzip", "gz") {
+        @Override
+        OutputStream encode(OutputStream outputStream) throws IOException {
+            return new GZIPOutputStream(outputStream, BUFFER_SIZE);
+        }
+
+        @Override
+        InputStream decode(InputStream inputStream) throws IOException {
+            return new GZIPInputStream(inputStream, BUFFER_SIZE);
+        }
+    },
+    ZSTD("zstd", "zst") {
+        @Override
+        OutputStream encode(OutputStream outputStream) throws IOException {
+            return new ZstdCompressorOutputStream(outputStream, ZSTD_LEVEL);
+        }
+
+        @Override
+        InputStream decode(InputStream inputStream) throws IOException {
+            return new ZstdCompressorInputStream(inputStream);
+        }
+    };
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int ZSTD_LEVEL = 3;
+
+    private final String contentEncoding;
+    private final String fileExtension;
+
+    ContentCodec(String contentEncoding, String fileExtension) {
+        this.contentEncoding = contentEncoding;
+        this.fileExtension = fileExtension;
+    }
+
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    String getFileExtension() {
+        return fileExtension;
+    }
+
+    /**
+     * Closing the returned stream finishes the compressed data and closes {@code outputStream}.
+     */
+    abstract OutputStream encode(OutputStream outputStream) throws IOException;
+
+    abstract InputStream decode(InputStream inputStream) throws IOException;
+
+    /**
+     * Whether {@code Accept-Encoding} lists this coding with a non-zero weight.
+     */
+    boolean isAcceptedBy(HttpHeaders requestHeaders) {
+        for (String value : requestHeaders.getOrEmpty(HttpHeaders.ACCEPT_ENCODING)) {
+            for (String coding : value.split(",")) {
+                String[] parts = coding.split(";");
+                if (!parts[0].trim().equalsIgnoreCase(contentEncoding)) {
+                    continue;
+                }
+                for (int i = 1; i < parts.length; i++) {
+                    String parameter = parts[i].trim().toLowerCase(Locale.ROOT);
+                    if (parameter.startsWith("q=") && isZero(parameter.substring(2))) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isZero(String weight) {
+        try {
+            return Double.parseDouble(weight) == 0;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    static Optional<ContentCodec> forContentEncoding(String contentEncoding) {
+        return Arrays.stream(values()).filter(codec -> codec.contentEncoding.equals(contentEncoding)).findFirst();
+    }
+
+    static Optional<ContentCodec> forFileExtension(String fileExtension) {
+        return Arrays.stream(values()).filter(codec -> codec.fileExtension.equals(fileExtension)).findFirst();
+    }
+}
@@ -0,0 +1,86 @@
+package edu.project.upload.services;
+
+import edu.project.upload.configuration.UploadConfiguration;
+import org.springframework.stereotype.Component;
+import org.springframework.util.InvalidMimeTypeException;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.util.StringUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.util.List;
+
+/**
+ * Picks the codec content is stored with. Only content types listed in {@code upload.compression.content-types}
+ * that are not compressed already qualify, and only once at least {@code min-size} bytes have been read, so small
+ * files are not wrapped in codec overhead.
+ */
+@Component
+class ContentCompression {
+    private final UploadConfiguration.Compression config;
+    private final List<MimeType> contentTypes;
+
+    ContentCompression(UploadConfiguration uploadConfiguration) {
+        this.config = uploadConfiguration.getCompression();
+        this.contentTypes = config.getContentTypes().stream().map(MimeTypeUtils::parseMimeType).toList();
+    }
+
+    /**
+     * Reads up to {@code min-size} bytes ahead to decide, the returned content still starts at the first byte.
+     */
+    EncodedContent encode(InputStream content, String contentType) throws IOException {
+        if (!isCompressible(contentType)) {
+            return new EncodedContent(null, content);
+        }
+        int minSize = (int) config.getMinSize().toBytes();
+        byte[] head = content.readNBytes(minSize);
+        InputStream all = new SequenceInputStream(new ByteArrayInputStream(head), content);
+        return new EncodedContent(head.length < minSize ? null : config.getCodec(), all);
+    }
+
+    private boolean isCompressible(String contentType) {
+        if (!config.isEnabled() || !StringUtils.hasText(contentType) || ContentTypes.isCompressed(contentType)) {
+            return false;
+        }
+        try {
+            MimeType mimeType = MimeTypeUtils.parseMimeType(contentType);
+            return contentTypes.stream().anyMatch(type -> type.includes(mimeType));
+        } catch (InvalidMimeTypeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param codec {@code null} when the content is stored as it is
+     */
+    record EncodedContent(ContentCodec codec, InputStream content) {
+        /**
+         * Writes the stored form of the content. {@code outputStream} is left open, so a backend can still abort
+         * it when writing fails.
+         */
+        void writeTo(OutputStream outputStream) throws IOException {
+            if (codec == null) {
+                content.transferTo(outputStream);
+                return;
+            }
+            try (OutputStream encoder = codec.encode(new FilterOutputStream(outputStream) {
+                @Override
+                public void write(byte[] bytes, int offset, int length) throws IOException {
+                    out.write(bytes, offset, length);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    flush();
+                }
+            })) {
+                content.transferTo(encoder);
+            }
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package edu.project.upload.services;
+
+import edu.project.upload.configuration.UploadConfiguration;
+import edu.project.upload.model.ContentDeletion;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+/**
+ * Durable queue of stored content to delete. Enqueuing only records the storage key, so releasing content costs one
+ * upsert however large it is; {@link #drain()} deletes it in the background with
+ * {@link ContentStorage#deleteGradually} and retries failures with exponential backoff. Entries survive restarts and
+ * are only removed once their content is gone.
+ * <p>
+ * An entry is taken by moving its {@code nextAttemptAt} past the claim timeout, so instances do not work on the same
+ * entry and the entry of a worker that died comes due again.
+ */
+@Service
+@Slf4j
+public class ContentDeletionQueue {
+    private final MongoTemplate mongoTemplate;
+    private final ContentStorage contentStorage;
+    private final UploadConfiguration.Deletion config;
+    private final Counter deletedContents;
+    private final Counter failedDeletes;
+
+    public ContentDeletionQueue(MongoTemplate mongoTemplate, ContentStorage contentStorage, UploadConfiguration uploadConfiguration,
+                                MeterRegistry meterRegistry) {
+        this.mongoTemplate = mongoTemplate;
+        this.contentStorage = contentStorage;
+        this.config = uploadConfiguration.getDeletion();
+        this.deletedContents = Counter.builder("deletion.contents")
+                .description("Stored contents deleted by the deletion queue")
+                .tag("outcome", "deleted")
+                .register(meterRegistry);
+        this.failedDeletes = Counter.builder("deletion.contents")
+                .description("Stored contents deleted by the deletion queue")
+                .tag("outcome", "failed")
+                .register(meterRegistry);
+        Gauge.builder("deletion.queue.size", mongoTemplate, template -> template.estimatedCount(ContentDeletion.class))
+                .description("Stored contents waiting to be deleted")
+                .register(meterRegistry);
+    }
+
+    public void enqueue(Collection<String> storageKeys) {
+        if (storageKeys.isEmpty()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        BulkOperations upserts = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ContentDeletion.class);
+        for (String storageKey : storageKeys) {
+            upserts.upsert(Query.query(Criteria.where("_id").is(storageKey)), new Update()
+                    .setOnInsert("enqueuedAt", now)
+                    .setOnInsert("nextAttemptAt", now)
+                    .setOnInsert("attempts", 0));
+        }
+        upserts.execute();
+        log.debug("Queued {} stored contents for deletion", storageKeys.size());
+    }
+
+    @Scheduled(fixedDelayString = "#{@uploadConfiguration.deletion.pollInterval.toMillis()}")
+    public void scheduledDrain() {
+        try {
+            long deleted = drain();
+            if (deleted > 0) {
+                log.debug("Deleted {} queued stored contents", deleted);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Draining the content deletion queue failed", e);
+        }
+    }
+
+    /**
+     * Deletes up to {@code batch-size} due entries, the longest waiting first.
+     *
+     * @return the number of contents deleted
+     */
+    public synchronized long drain() {
+        long deleted = 0;
+        for (int i = 0; i < config.getBatchSize() && !Thread.currentThread().isInterrupted(); i++) {
+            ContentDeletion deletion = claimNext();
+            if (deletion == null) {
+                break;
+            }
+            if (delete(deletion)) {
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    private ContentDeletion claimNext() {
+        LocalDateTime now = LocalDateTime.now();
+        return mongoTemplate.findAndModify(
+                Query.query(Criteria.where("nextAttemptAt").lte(now)).with(Sort.by("nextAttemptAt")),
+                Update.update("nextAttemptAt", now.plus(config.getClaimTimeout())),
+                ContentDeletion.class);
+    }
+
+    private boolean delete(ContentDeletion deletion) {
+        Query entryQuery = Query.query(Criteria.where("_id").is(deletion.getStorageKey()));
+        try {
+            if (!contentStorage.deleteGradually(deletion.getStorageKey(), config.getChunkBatchSize(), this::pause)) {
+                // interrupted, the entry comes due again after the claim timeout
+                return false;
+            }
+            mongoTemplate.remove(entryQuery, ContentDeletion.class);
+            deletedContents.increment();
+            return true;
+        } catch (RuntimeException e) {
+            int attempts = deletion.getAttempts() + 1;
+            Duration backoff = backoff(attempts);
+            log.warn("Failed to delete stored content {}, attempt {}, retrying in {}", deletion.getStorageKey(), attempts, backoff, e);
+            mongoTemplate.updateFirst(entryQuery, new Update()
+                    .set("attempts", attempts)
+                    .set("nextAttemptAt", LocalDateTime.now().plus(backoff))
+                    .set("lastError", String.valueOf(e.getMessage())), ContentDeletion.class);
+            failedDeletes.increment();
+            return false;
+        }
+    }
+
+    private Duration backoff(int attempts) {
+        Duration backoff = config.getRetryBackoff().multipliedBy(1L << Math.min(attempts - 1, 20));
+        return backoff.compareTo(config.getMaxRetryBackoff()) > 0 ? config.getMaxRetryBackoff() : backoff;
+    }
+
+    private boolean pause() {
+        try {
+            Thread.sleep(config.getChunkBatchPause());
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package edu.project.upload.services;
+
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Storage backend for file content. Content is addressed by an opaque storage key that the backend hands out on
+ * {@link #store}, {@link edu.project.upload.model.FileInfo} and the blobs only keep that key.
+ */
+public interface ContentStorage {
+    String store(InputStream content, String fileName, String contentType) throws IOException;
+
+    /**
+     * @param expectedSize size of the content when known up front, {@code -1} otherwise; backends may tune how
+     *                     they write by it
+     */
+    default String store(InputStream content, String fileName, String contentType, long expectedSize) throws IOException {
+        return store(content, fileName, contentType);
+    }
+
+    Optional<StoredObject> stat(String key);
+
+    /**
+     * Seekable resource over the content: every {@link Resource#getInputStream()} starts a fresh stream and
+     * skipping in it does not read the skipped bytes, which is what range requests rely on.
+     */
+    Resource open(StoredObject storedObject);
+
+    void delete(String key);
+
+    default void deleteAll(Collection<String> keys) {
+        keys.forEach(this::delete);
+    }
+
+    /**
+     * {@link #delete} for background deletion: backends that keep content in many pieces remove {@code batchSize} of
+     * them at a time and call {@code pause} in between, stopping when it returns {@code false}. Calling it again
+     * after a failure or a stop finishes the delete.
+     *
+     * @return whether the content is gone completely
+     */
+    default boolean deleteGradually(String key, int batchSize, BooleanSupplier pause) {
+        delete(key);
+        return true;
+    }
+}
@@ -0,0 +1,51 @@
+package edu.project.upload.services;
+
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Content types whose data is compressed already, so compressing it once more only costs CPU.
+ */
+final class ContentTypes {
+    private static final Set<String> COMPRESSED = Set.of(
+            "application/zip",
+            "application/gzip",
+            "application/x-gzip",
+            "application/x-bzip2",
+            "application/x-xz",
+            "application/x-7z-compressed",
+            "application/x-rar-compressed",
+            "application/vnd.rar",
+            "application/zstd",
+            "application/java-archive",
+            "application/pdf",
+            "application/vnd.openxmlformats-officedocument.wordprocessingml.document",
+            "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet",
+            "application/vnd.openxmlformats-officedocument.presentationml.presentation",
+            "image/jpeg",
+            "image/png",
+            "image/gif",
+            "image/webp",
+            "image/avif",
+            "image/heic");
+    private static final Set<String> UNCOMPRESSED_MEDIA = Set.of("audio/wav", "audio/x-wav", "audio/wave");
+
+    private ContentTypes() {
+    }
+
+    static boolean isCompressed(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        String type = contentType.toLowerCase(Locale.ROOT);
+        int parameters = type.indexOf(';');
+        if (parameters >= 0) {
+            type = type.substring(0, parameters);
+        }
+        type = type.trim();
+        if (COMPRESSED.contains(type)) {
+            return true;
+        }
+        return (type.startsWith("video/") || type.startsWith("audio/")) && !UNCOMPRESSED_MEDIA.contains(type);
+    }
+}
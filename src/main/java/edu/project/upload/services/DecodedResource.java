@@ -0,0 +1,48 @@
+package edu.project.upload.services;
+
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The content of a compressed stored object. Streams decode from the start, so skipping for a range still decodes
+ * the skipped bytes; ranges over compressed content cost what a download up to their end costs.
+ */
+class DecodedResource extends AbstractResource {
+    private final Resource stored;
+    private final ContentCodec codec;
+    private final long length;
+
+    DecodedResource(Resource stored, ContentCodec codec, long length) {
+        this.stored = stored;
+        this.codec = codec;
+        this.length = length;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return codec.decode(stored.getInputStream());
+    }
+
+    @Override
+    public boolean exists() {
+        return stored.exists();
+    }
+
+    @Override
+    public long contentLength() {
+        return length;
+    }
+
+    @Override
+    public String getFilename() {
+        return stored.getFilename();
+    }
+
+    @Override
+    public String getDescription() {
+        return codec.getContentEncoding() + " decoded " + stored.getDescription();
+    }
+}
@@ -5,35 +5,72 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
-import java.io.BufferedInputStream;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.security.DigestInputStream;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class DefaulHashCalculator implements HashCalculator {
+    /**
+     * Large reads keep the number of calls into the stream and the digest low. Heap memory on purpose:
+     * JCA digests copy direct buffers into an array first.
+     */
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final HexFormat HEX = HexFormat.of();
+
     private final UploadConfiguration uploadConfiguration;
 
     @Override
     public String calculateHash(InputStream inputStream) {
-        try (BufferedInputStream bis = new BufferedInputStream(inputStream)) {
-            byte[] buffer = new byte[8192];
-            int bytesRead;
-            MessageDigest messageDigest = MessageDigest.getInstance(uploadConfiguration.getHashAlgo());
-            while ((bytesRead = bis.read(buffer)) != -1) {
-                messageDigest.update(buffer, 0, bytesRead);
-            }
-
-            byte[] digest = messageDigest.digest();
-            StringBuilder sb = new StringBuilder();
-            for (byte b : digest) {
-                sb.append(String.format("%02x", b));
+        try (ReadableByteChannel channel = Channels.newChannel(inputStream)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            MessageDigest messageDigest = newDigest();
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                messageDigest.update(buffer);
+                buffer.clear();
             }
-            log.debug("calculated hash: {}", sb);
-            return sb.toString();
+            return getHash(messageDigest);
         } catch (Exception e) {
             throw new RuntimeException("Could not calculate hash for file", e);
         }
     }
+
+    @Override
+    public DigestInputStream digestStream(InputStream inputStream) {
+        return new DigestInputStream(inputStream, newDigest());
+    }
+
+    @Override
+    public String getHash(MessageDigest messageDigest) {
+        String hash = HEX.formatHex(messageDigest.digest());
+        log.debug("calculated hash: {}", hash);
+        return hash;
+    }
+
+    @Override
+    public MessageDigest newDigest() {
+        try {
+            return HashAlgorithms.newDigest(uploadConfiguration.getHashAlgo());
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Unsupported hash algorithm: " + uploadConfiguration.getHashAlgo(), e);
+        }
+    }
+
+    @Override
+    public String getAlgorithm() {
+        return uploadConfiguration.getHashAlgo();
+    }
+
+    @Override
+    public boolean isCollisionResistant() {
+        return HashAlgorithms.isCollisionResistant(uploadConfiguration.getHashAlgo());
+    }
 }
@@ -0,0 +1,118 @@
+package edu.project.upload.services;
+
+import edu.project.upload.model.ArchiveFormat;
+import edu.project.upload.model.FileInfo;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+/**
+ * Writes files into a ZIP or TAR stream one after the other, so memory use does not depend on the number or size
+ * of the files and nothing is staged on disk.
+ */
+final class FileArchives {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private FileArchives() {
+    }
+
+    @FunctionalInterface
+    interface ContentOpener {
+        InputStream open(FileInfo fileInfo) throws IOException;
+    }
+
+    /**
+     * @return the number of files written
+     */
+    static long write(ArchiveFormat format, OutputStream outputStream, Iterator<FileInfo> files, ContentOpener opener)
+            throws IOException {
+        return format == ArchiveFormat.TAR ? writeTar(outputStream, files, opener) : writeZip(outputStream, files, opener);
+    }
+
+    /**
+     * Already compressed content goes into deflate entries without compression: true stored entries need their CRC
+     * before the data, which would mean reading every file twice.
+     */
+    private static long writeZip(OutputStream outputStream, Iterator<FileInfo> files, ContentOpener opener) throws IOException {
+        Set<String> names = new HashSet<>();
+        long written = 0;
+        try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(outputStream)) {
+            while (files.hasNext()) {
+                FileInfo fileInfo = files.next();
+                ZipArchiveEntry entry = new ZipArchiveEntry(entryName(fileInfo, names));
+                entry.setMethod(ZipArchiveEntry.DEFLATED);
+                entry.setSize(fileInfo.getFileSize());
+                entry.setTime(lastModified(fileInfo));
+                zip.setLevel(ContentTypes.isCompressed(fileInfo.getContentType()) ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION);
+                zip.putArchiveEntry(entry);
+                copy(opener, fileInfo, zip);
+                zip.closeArchiveEntry();
+                written++;
+            }
+            zip.finish();
+        }
+        return written;
+    }
+
+    private static long writeTar(OutputStream outputStream, Iterator<FileInfo> files, ContentOpener opener) throws IOException {
+        Set<String> names = new HashSet<>();
+        long written = 0;
+        try (TarArchiveOutputStream tar = new TarArchiveOutputStream(outputStream)) {
+            tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+            tar.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+            while (files.hasNext()) {
+                FileInfo fileInfo = files.next();
+                TarArchiveEntry entry = new TarArchiveEntry(entryName(fileInfo, names));
+                entry.setSize(fileInfo.getFileSize());
+                entry.setModTime(new Date(lastModified(fileInfo)));
+                tar.putArchiveEntry(entry);
+                copy(opener, fileInfo, tar);
+                tar.closeArchiveEntry();
+                written++;
+            }
+            tar.finish();
+        }
+        return written;
+    }
+
+    private static void copy(ContentOpener opener, FileInfo fileInfo, OutputStream archive) throws IOException {
+        try (InputStream content = opener.open(fileInfo)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = content.read(buffer)) != -1) {
+                archive.write(buffer, 0, read);
+            }
+        }
+    }
+
+    /**
+     * File names without directories, made unique with the file id where several files share a name.
+     */
+    static String entryName(FileInfo fileInfo, Set<String> names) {
+        String fileName = fileInfo.getFileName().replace('\\', '/');
+        fileName = fileName.substring(fileName.lastIndexOf('/') + 1);
+        if (fileName.isEmpty() || fileName.equals("..") || fileName.equals(".")) {
+            fileName = fileInfo.getFileId();
+        }
+        if (!names.add(fileName)) {
+            fileName = fileInfo.getFileId() + "-" + fileName;
+            names.add(fileName);
+        }
+        return fileName;
+    }
+
+    private static long lastModified(FileInfo fileInfo) {
+        return fileInfo.getUploadDate().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
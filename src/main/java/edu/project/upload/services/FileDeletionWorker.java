@@ -0,0 +1,161 @@
+package edu.project.upload.services;
+
+import edu.project.upload.configuration.UploadConfiguration;
+import edu.project.upload.model.FileInfo;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Finishes deletes in the background. A delete only tombstones the file ({@link FileInfo#getDeletedAt()}), which hides
+ * it at once; this worker claims tombstones a batch at a time, releases their content and removes the documents.
+ * Content that loses its last reference goes to the {@link ContentDeletionQueue}, so no part of a delete that grows
+ * with the file size runs on a request thread.
+ * <p>
+ * A tombstone is released at most once: the worker marks it released before removing it. When a worker dies
+ * between claiming and marking, the stale claim is removed later after releasing only content no blob shares, which
+ * is safe to repeat; a blob reference that leaks that way is reclaimed by the reconciler, on every backend.
+ */
+@Service
+@Slf4j
+public class FileDeletionWorker {
+    private final MongoTemplate mongoTemplate;
+    private final BlobStore blobStore;
+    private final UploadConfiguration.Deletion config;
+    private final Counter removedFiles;
+
+    public FileDeletionWorker(MongoTemplate mongoTemplate, BlobStore blobStore, UploadConfiguration uploadConfiguration,
+                              MeterRegistry meterRegistry) {
+        this.mongoTemplate = mongoTemplate;
+        this.blobStore = blobStore;
+        this.config = uploadConfiguration.getDeletion();
+        this.removedFiles = Counter.builder("deletion.files")
+                .description("Tombstoned files removed by the deletion worker")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "#{@uploadConfiguration.deletion.pollInterval.toMillis()}")
+    public void scheduledProcess() {
+        try {
+            long removed = processTombstones();
+            if (removed > 0) {
+                log.debug("Removed {} deleted files", removed);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Processing deleted files failed", e);
+        }
+    }
+
+    /**
+     * Processes up to {@code batch-size} tombstones, the oldest first, on the calling thread.
+     *
+     * @return the number of files removed
+     */
+    public synchronized long processTombstones() {
+        Query query = Query.query(Criteria.where("deletedAt").lte(LocalDateTime.now()))
+                .with(Sort.by("deletedAt"))
+                .limit(config.getBatchSize());
+        return process(query);
+    }
+
+    /**
+     * Processes the tombstones of {@code userId} that still hold one of the names or hashes right away, so an upload
+     * or rename does not conflict with a file that is deleted already.
+     *
+     * @return whether any of them was removed
+     */
+    public boolean purgeTombstones(String userId, Collection<String> fileNames, Collection<String> hashes) {
+        Query query = Query.query(Criteria.where("userId").is(userId).and("deletedAt").ne(null)
+                .orOperator(Criteria.where("fileName").in(fileNames), Criteria.where("hash").in(hashes)));
+        return process(query) > 0;
+    }
+
+    /**
+     * Handles the tombstones of a batch together: stale claims are removed with one delete, after the unreleased ones
+     * went through {@link BlobStore#releaseUnshared}; the unclaimed ones are claimed with one update under a fresh
+     * claim id, read back by that id, released with one {@link BlobStore#releaseAll}, marked released and removed
+     * with one more delete, so a batch costs the same few round trips however many tombstones it holds.
+     */
+    private long process(Query query) {
+        query.fields().include("hash", "storageKey", "deletionClaimedAt", "deletionReleased");
+        List<FileInfo> tombstones = mongoTemplate.find(query, FileInfo.class);
+        if (tombstones.isEmpty()) {
+            return 0;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        List<String> unclaimedIds = new ArrayList<>();
+        List<FileInfo> stale = new ArrayList<>();
+        for (FileInfo tombstone : tombstones) {
+            if (tombstone.getDeletionClaimedAt() == null) {
+                unclaimedIds.add(tombstone.getFileId());
+            } else if (!tombstone.getDeletionClaimedAt().isAfter(now.minus(config.getClaimTimeout()))) {
+                stale.add(tombstone);
+            }
+            // otherwise another worker is on it
+        }
+        return removeStale(stale, now) + releaseAndRemove(unclaimedIds, now);
+    }
+
+    private long removeStale(List<FileInfo> stale, LocalDateTime now) {
+        if (stale.isEmpty()) {
+            return 0;
+        }
+        List<FileInfo> unreleased = stale.stream().filter(tombstone -> !tombstone.isDeletionReleased()).toList();
+        if (!unreleased.isEmpty()) {
+            log.warn("Removing {} deleted files whose worker died before releasing their content, first ones: {}", unreleased.size(),
+                    unreleased.stream().limit(20).map(FileInfo::getFileId).toList());
+            blobStore.releaseUnshared(references(unreleased));
+        }
+        return remove(Criteria.where("_id").in(stale.stream().map(FileInfo::getFileId).toList())
+                .and("deletionClaimedAt").lte(now.minus(config.getClaimTimeout())));
+    }
+
+    private long releaseAndRemove(List<String> fileIds, LocalDateTime now) {
+        if (fileIds.isEmpty()) {
+            return 0;
+        }
+        String claimId = UUID.randomUUID().toString();
+        mongoTemplate.updateMulti(
+                Query.query(Criteria.where("_id").in(fileIds).and("deletedAt").ne(null).and("deletionClaimedAt").is(null)),
+                new Update().set("deletionClaimedAt", now).set("deletionClaimId", claimId),
+                FileInfo.class);
+        Query claimedQuery = Query.query(Criteria.where("deletionClaimId").is(claimId).and("_id").in(fileIds));
+        claimedQuery.fields().include("hash", "storageKey");
+        List<FileInfo> claimed = mongoTemplate.find(claimedQuery, FileInfo.class);
+        if (claimed.isEmpty()) {
+            return 0;
+        }
+        blobStore.releaseAll(references(claimed));
+        Criteria claimedCriteria = Criteria.where("deletionClaimId").is(claimId).and("_id").in(fileIds);
+        mongoTemplate.updateMulti(Query.query(claimedCriteria), Update.update("deletionReleased", true), FileInfo.class);
+        return remove(Criteria.where("deletionClaimId").is(claimId).and("_id").in(fileIds));
+    }
+
+    private static List<BlobStore.Reference> references(List<FileInfo> files) {
+        return files.stream()
+                .map(file -> new BlobStore.Reference(file.getHash(), file.getStorageKey()))
+                .toList();
+    }
+
+    private long remove(Criteria criteria) {
+        long removed = mongoTemplate.remove(Query.query(criteria.and("deletedAt").ne(null)), FileInfo.class).getDeletedCount();
+        if (removed > 0) {
+            removedFiles.increment(removed);
+            log.debug("Removed {} deleted files", removed);
+        }
+        return removed;
+    }
+}
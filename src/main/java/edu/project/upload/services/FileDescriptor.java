@@ -0,0 +1,9 @@
+package edu.project.upload.services;
+
+import edu.project.upload.model.FileInfo;
+
+/**
+ * Everything a download needs before streaming: the metadata and the stored content it points to.
+ */
+record FileDescriptor(FileInfo fileInfo, StoredObject storedObject) {
+}
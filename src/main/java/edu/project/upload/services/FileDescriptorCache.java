@@ -0,0 +1,61 @@
+package edu.project.upload.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import edu.project.upload.configuration.UploadConfiguration;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Bounded cache of {@link FileDescriptor}s for downloads. Writers invalidate after their update. Descriptors are only
+ * loaded inside {@link Cache#get}, which holds the key's entry for the load, and a key is invalidated with a
+ * {@code compute} on the same entry, so an invalidate waits for a load that may have read the old state and removes
+ * its result. {@link #invalidateAll()} cannot see loads in flight; a load that overlapped one drops its own result.
+ */
+@Service
+@Slf4j
+public class FileDescriptorCache {
+    static final String CACHE_NAME = "file_descriptors";
+
+    private final Cache<String, FileDescriptor> cache;
+    private final boolean enabled;
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public FileDescriptorCache(UploadConfiguration uploadConfiguration, MeterRegistry meterRegistry) {
+        UploadConfiguration.MetadataCache config = uploadConfiguration.getMetadataCache();
+        this.enabled = config.isEnabled();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(config.getMaxSize())
+                .expireAfterWrite(config.getTtl())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    FileDescriptor get(String fileId, Function<String, FileDescriptor> loader) {
+        if (!enabled) {
+            return loader.apply(fileId);
+        }
+        long invalidationsBefore = invalidations.get();
+        FileDescriptor descriptor = cache.get(fileId, loader);
+        if (invalidations.get() != invalidationsBefore) {
+            cache.asMap().remove(fileId, descriptor);
+        }
+        return descriptor;
+    }
+
+    public void invalidate(String fileId) {
+        log.debug("Invalidating cached file: {}", fileId);
+        cache.asMap().compute(fileId, (id, descriptor) -> null);
+    }
+
+    public void invalidateAll() {
+        invalidations.incrementAndGet();
+        cache.invalidateAll();
+    }
+}
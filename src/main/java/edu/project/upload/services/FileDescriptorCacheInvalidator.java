@@ -0,0 +1,90 @@
+package edu.project.upload.services;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import edu.project.upload.model.FileInfo;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Follows a change stream on {@code files} and drops entries that were updated or deleted on any node.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+@ConditionalOnProperty(prefix = "upload.metadata-cache", name = "change-stream", havingValue = "true")
+public class FileDescriptorCacheInvalidator {
+    private static final long RETRY_DELAY_MILLIS = 5_000;
+
+    private final MongoTemplate mongoTemplate;
+    private final FileDescriptorCache fileDescriptorCache;
+
+    private volatile boolean running = true;
+    private volatile MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor;
+    private Thread thread;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        thread = Thread.ofPlatform().daemon().name("file-cache-invalidator").start(this::follow);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        MongoChangeStreamCursor<ChangeStreamDocument<Document>> current = cursor;
+        if (current != null) {
+            current.close();
+        }
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private void follow() {
+        boolean restarted = false;
+        while (running) {
+            try {
+                cursor = mongoTemplate.getCollection(mongoTemplate.getCollectionName(FileInfo.class))
+                        .watch(List.of(Aggregates.match(Filters.in("operationType", "update", "replace", "delete"))))
+                        .cursor();
+                if (restarted) {
+                    // changes made while the stream was down are unknown
+                    fileDescriptorCache.invalidateAll();
+                }
+                while (running) {
+                    ChangeStreamDocument<Document> change = cursor.next();
+                    if (change.getDocumentKey() != null) {
+                        fileDescriptorCache.invalidate(change.getDocumentKey().getString("_id").getValue());
+                    }
+                }
+            } catch (MongoException | IllegalStateException e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("File change stream failed, retrying", e);
+                restarted = true;
+                try {
+                    Thread.sleep(RETRY_DELAY_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            } finally {
+                if (cursor != null) {
+                    cursor.close();
+                }
+            }
+        }
+    }
+}
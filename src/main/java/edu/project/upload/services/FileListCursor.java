@@ -0,0 +1,28 @@
+package edu.project.upload.services;
+
+import org.bson.Document;
+import org.bson.json.JsonParseException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque continuation token of a keyset listing: the sort key and {@code fileId} of the last returned file,
+ * kept as extended JSON so dates and numbers keep their BSON types.
+ */
+record FileListCursor(String sortBy, Object sortValue, String fileId) {
+
+    String encode() {
+        String json = new Document("s", sortBy).append("v", sortValue).append("id", fileId).toJson();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static FileListCursor decode(String token) {
+        try {
+            Document document = Document.parse(new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8));
+            return new FileListCursor(document.getString("s"), document.get("v"), document.getString("id"));
+        } catch (IllegalArgumentException | JsonParseException | ClassCastException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+}
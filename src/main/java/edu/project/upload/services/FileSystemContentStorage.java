@@ -0,0 +1,75 @@
+package edu.project.upload.services;
+
+import edu.project.upload.configuration.UploadConfiguration;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Keeps content as plain files below {@code upload.storage.root}. Reads come from the page cache instead of
+ * chunk documents, and {@link StoredObject#localPath()} lets the reactive stack send files with zero-copy writes.
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(prefix = "upload.storage", name = "backend", havingValue = "FILESYSTEM")
+public class FileSystemContentStorage implements ContentStorage {
+    private final FileSystemLayout layout;
+    private final ContentCompression contentCompression;
+
+    public FileSystemContentStorage(UploadConfiguration uploadConfiguration, ContentCompression contentCompression) throws IOException {
+        this.layout = new FileSystemLayout(Path.of(uploadConfiguration.getStorage().getRoot()));
+        this.contentCompression = contentCompression;
+        layout.createDirectories();
+    }
+
+    @Override
+    public String store(InputStream content, String fileName, String contentType) throws IOException {
+        ContentCompression.EncodedContent encodedContent = contentCompression.encode(content, contentType);
+        String key = layout.newKey(encodedContent.codec());
+        Path tempFile = layout.newTempFile();
+        try {
+            try (OutputStream outputStream = Files.newOutputStream(tempFile)) {
+                encodedContent.writeTo(outputStream);
+            }
+            layout.moveIntoPlace(tempFile, key);
+        } catch (IOException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+        log.debug("Stored {} as {}", fileName, key);
+        return key;
+    }
+
+    @Override
+    public Optional<StoredObject> stat(String key) {
+        Path path = layout.path(key);
+        try {
+            return Optional.of(new LocalStoredObject(key, path, Files.size(path)));
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public Resource open(StoredObject storedObject) {
+        return new FileSystemResource(((LocalStoredObject) storedObject).path());
+    }
+
+    @Override
+    public void delete(String key) {
+        try {
+            Files.deleteIfExists(layout.path(key));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to delete stored content " + key, e);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package edu.project.upload.services;
+
+import org.bson.types.ObjectId;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+
+/**
+ * Directory layout of the filesystem backend. Keys are ObjectId hex strings, spread over 256 directories by their
+ * last byte (the counter part, so consecutive uploads land in different directories). New content is written to
+ * {@code tmp} and moved into place once complete, so a key never points at a partial file. Compressed content gets
+ * the file extension of its {@link ContentCodec} appended to the key.
+ */
+final class FileSystemLayout {
+    private static final int ID_LENGTH = 24;
+
+    private final Path root;
+    private final Path tmp;
+
+    FileSystemLayout(Path root) {
+        this.root = root.toAbsolutePath().normalize();
+        this.tmp = this.root.resolve("tmp");
+    }
+
+    void createDirectories() throws IOException {
+        Files.createDirectories(tmp);
+    }
+
+    String newKey() {
+        return new ObjectId().toHexString();
+    }
+
+    String newKey(ContentCodec codec) {
+        return codec == null ? newKey() : newKey() + "." + codec.getFileExtension();
+    }
+
+    Path path(String key) {
+        String id = key.length() > ID_LENGTH && key.charAt(ID_LENGTH) == '.' ? key.substring(0, ID_LENGTH) : key;
+        if (!ObjectId.isValid(id) || (id.length() < key.length() && codec(key).isEmpty())) {
+            throw new IllegalArgumentException("Invalid storage key: " + key);
+        }
+        return root.resolve(id.substring(22)).resolve(key);
+    }
+
+    static Optional<ContentCodec> codec(String key) {
+        if (key.length() <= ID_LENGTH + 1 || key.charAt(ID_LENGTH) != '.') {
+            return Optional.empty();
+        }
+        return ContentCodec.forFileExtension(key.substring(ID_LENGTH + 1));
+    }
+
+    Path newTempFile() throws IOException {
+        return Files.createTempFile(tmp, "upload-", ".tmp");
+    }
+
+    void moveIntoPlace(Path tempFile, String key) throws IOException {
+        Path target = path(key);
+        Files.createDirectories(target.getParent());
+        Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,117 @@
+package edu.project.upload.services;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Sorts;
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.bson.types.ObjectId;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads a GridFS file straight from its chunk documents. {@link #skip(long)} works out the chunk that
+ * holds the new position from the chunk size and re-queries from there, so earlier chunks are never fetched.
+ */
+class GridFsChunkInputStream extends InputStream {
+    private static final int CURSOR_BATCH_SIZE = 8;
+
+    private final MongoCollection<Document> chunks;
+    private final ObjectId filesId;
+    private final int chunkSize;
+    private final long length;
+
+    private long position;
+    private MongoCursor<Document> cursor;
+    private int nextChunkIndex;
+    private byte[] buffer;
+    private int bufferChunkIndex = -1;
+
+    GridFsChunkInputStream(MongoCollection<Document> chunks, ObjectId filesId, int chunkSize, long length) {
+        this.chunks = chunks;
+        this.filesId = filesId;
+        this.chunkSize = chunkSize;
+        this.length = length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        int read = read(single, 0, 1);
+        return read == -1 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (position >= length) {
+            return -1;
+        }
+        int chunkIndex = (int) (position / chunkSize);
+        if (bufferChunkIndex != chunkIndex) {
+            loadChunk(chunkIndex);
+        }
+        int bufferOffset = (int) (position % chunkSize);
+        int toCopy = Math.min(len, buffer.length - bufferOffset);
+        if (toCopy <= 0) {
+            throw new IOException("Chunk " + chunkIndex + " of GridFS file " + filesId + " is shorter than expected");
+        }
+        System.arraycopy(buffer, bufferOffset, b, off, toCopy);
+        position += toCopy;
+        return toCopy;
+    }
+
+    @Override
+    public long skip(long n) {
+        long skipped = Math.max(0, Math.min(n, length - position));
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        if (buffer == null || bufferChunkIndex != (int) (position / chunkSize)) {
+            return 0;
+        }
+        return buffer.length - (int) (position % chunkSize);
+    }
+
+    @Override
+    public void close() {
+        closeCursor();
+        buffer = null;
+    }
+
+    private void loadChunk(int chunkIndex) throws IOException {
+        if (cursor == null || nextChunkIndex != chunkIndex) {
+            closeCursor();
+            cursor = chunks.find(Filters.and(Filters.eq("files_id", filesId), Filters.gte("n", chunkIndex)))
+                    .sort(Sorts.ascending("n"))
+                    .batchSize(CURSOR_BATCH_SIZE)
+                    .iterator();
+            nextChunkIndex = chunkIndex;
+        }
+        if (!cursor.hasNext()) {
+            throw new IOException("Missing chunk " + chunkIndex + " of GridFS file " + filesId);
+        }
+        Document chunk = cursor.next();
+        int n = chunk.getInteger("n");
+        if (n != chunkIndex) {
+            throw new IOException("Expected chunk " + chunkIndex + " of GridFS file " + filesId + " but got " + n);
+        }
+        buffer = chunk.get("data", Binary.class).getData();
+        bufferChunkIndex = chunkIndex;
+        nextChunkIndex = chunkIndex + 1;
+    }
+
+    private void closeCursor() {
+        if (cursor != null) {
+            cursor.close();
+            cursor = null;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package edu.project.upload.services;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.InsertManyOptions;
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.bson.types.ObjectId;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Writes a GridFS file straight into its chunk documents. Chunks are inserted with one {@code insertMany} per batch
+ * and several batches in flight, instead of one round-trip per chunk. The files document is only inserted once every
+ * chunk is acknowledged, so a file never becomes visible with chunks missing; {@link #abort()} drops what was written.
+ * A batch in flight holds a permit of the stream and one of a semaphore shared by all streams, which bounds the memory
+ * of one upload and of all of them together.
+ */
+class GridFsChunkOutputStream extends OutputStream {
+    /**
+     * Keeps chunk documents well below the 16 MB BSON limit.
+     */
+    static final int MAX_CHUNK_SIZE = 15 * 1024 * 1024;
+
+    private final MongoCollection<Document> chunks;
+    private final MongoCollection<Document> files;
+    private final ObjectId filesId = new ObjectId();
+    private final String fileName;
+    private final Document metadata;
+    private final int chunkSize;
+    private final int chunksPerBatch;
+    private final int maxInFlightBatches;
+    private final Semaphore inFlightBatches;
+    private final Semaphore sharedInFlightBatches;
+    private final Executor executor;
+
+    private byte[] buffer;
+    private int bufferPosition;
+    private List<Document> batch = new ArrayList<>();
+    private int nextChunk;
+    private long length;
+    private volatile Throwable failure;
+    private boolean closed;
+
+    GridFsChunkOutputStream(MongoCollection<Document> chunks, MongoCollection<Document> files, String fileName, Document metadata,
+                            int chunkSize, int chunksPerBatch, int maxInFlightBatches, Semaphore sharedInFlightBatches, Executor executor) {
+        if (chunkSize <= 0 || chunkSize > MAX_CHUNK_SIZE) {
+            throw new IllegalArgumentException("GridFS chunk size should be between 1 and " + MAX_CHUNK_SIZE + " bytes");
+        }
+        this.chunks = chunks;
+        this.files = files;
+        this.fileName = fileName;
+        this.metadata = metadata;
+        this.chunkSize = chunkSize;
+        this.chunksPerBatch = Math.max(1, chunksPerBatch);
+        this.maxInFlightBatches = Math.max(1, maxInFlightBatches);
+        this.inFlightBatches = new Semaphore(this.maxInFlightBatches);
+        this.sharedInFlightBatches = sharedInFlightBatches;
+        this.executor = executor;
+        this.buffer = new byte[chunkSize];
+    }
+
+    ObjectId getFilesId() {
+        return filesId;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int len) throws IOException {
+        checkOpen();
+        while (len > 0) {
+            int copied = Math.min(len, chunkSize - bufferPosition);
+            System.arraycopy(bytes, offset, buffer, bufferPosition, copied);
+            bufferPosition += copied;
+            offset += copied;
+            len -= copied;
+            if (bufferPosition == chunkSize) {
+                addChunk(buffer);
+                buffer = new byte[chunkSize];
+                bufferPosition = 0;
+            }
+        }
+    }
+
+    private void addChunk(byte[] data) throws IOException {
+        batch.add(new Document("files_id", filesId).append("n", nextChunk++).append("data", new Binary(data)));
+        length += data.length;
+        if (batch.size() == chunksPerBatch) {
+            sendBatch();
+        }
+    }
+
+    /**
+     * Blocks while {@code maxInFlightBatches} batches of this upload, or the shared limit of batches of all uploads,
+     * are being inserted.
+     */
+    private void sendBatch() throws IOException {
+        List<Document> documents = batch;
+        batch = new ArrayList<>();
+        acquire(inFlightBatches, 1);
+        try {
+            acquire(sharedInFlightBatches, 1);
+        } catch (IOException e) {
+            inFlightBatches.release();
+            throw e;
+        }
+        try {
+            checkFailure();
+            executor.execute(() -> {
+                try {
+                    chunks.insertMany(documents, new InsertManyOptions().ordered(false));
+                } catch (Throwable e) {
+                    failure = e;
+                } finally {
+                    sharedInFlightBatches.release();
+                    inFlightBatches.release();
+                }
+            });
+        } catch (IOException | RuntimeException e) {
+            sharedInFlightBatches.release();
+            inFlightBatches.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Sends the last chunk, waits for every batch and inserts the files document.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        checkFailure();
+        if (bufferPosition > 0) {
+            byte[] last = new byte[bufferPosition];
+            System.arraycopy(buffer, 0, last, 0, bufferPosition);
+            addChunk(last);
+        }
+        if (!batch.isEmpty()) {
+            sendBatch();
+        }
+        closed = true;
+        buffer = null;
+        awaitBatches();
+        if (failure != null) {
+            deleteChunks();
+            throw new IOException("Failed to write chunks of GridFS file " + filesId, failure);
+        }
+        files.insertOne(new Document("_id", filesId)
+                .append("length", length)
+                .append("chunkSize", chunkSize)
+                .append("uploadDate", new Date())
+                .append("filename", fileName)
+                .append("metadata", metadata));
+    }
+
+    /**
+     * Stops writing, waits for the batches in flight and deletes every chunk written so far.
+     */
+    void abort() {
+        closed = true;
+        buffer = null;
+        batch.clear();
+        try {
+            awaitBatches();
+        } catch (IOException e) {
+            // interrupted: a batch still in flight may land after the delete below
+        }
+        deleteChunks();
+    }
+
+    private void awaitBatches() throws IOException {
+        acquire(inFlightBatches, maxInFlightBatches);
+        inFlightBatches.release(maxInFlightBatches);
+    }
+
+    private void acquire(Semaphore semaphore, int permits) throws IOException {
+        try {
+            semaphore.acquire(permits);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing GridFS file " + filesId);
+        }
+    }
+
+    private void deleteChunks() {
+        chunks.deleteMany(Filters.eq("files_id", filesId));
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("GridFS file " + filesId + " is closed");
+        }
+        checkFailure();
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw new IOException("Failed to write chunks of GridFS file " + filesId, failure);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package edu.project.upload.services;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.gridfs.model.GridFSFile;
+import org.bson.Document;
+import org.springframework.core.io.AbstractResource;
+
+import java.io.InputStream;
+
+/**
+ * Seekable view over a GridFS file. Every {@link #getInputStream()} call opens a fresh
+ * {@link GridFsChunkInputStream}, which lets {@link org.springframework.core.io.support.ResourceRegion}s
+ * jump straight to the chunks they cover.
+ */
+class GridFsChunkResource extends AbstractResource {
+    private final MongoCollection<Document> chunks;
+    private final GridFSFile gridFSFile;
+    private final long length;
+
+    GridFsChunkResource(MongoCollection<Document> chunks, GridFSFile gridFSFile, long length) {
+        this.chunks = chunks;
+        this.gridFSFile = gridFSFile;
+        this.length = length;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return new GridFsChunkInputStream(chunks, gridFSFile.getObjectId(), gridFSFile.getChunkSize(), length);
+    }
+
+    @Override
+    public boolean exists() {
+        return true;
+    }
+
+    @Override
+    public long contentLength() {
+        return length;
+    }
+
+    @Override
+    public String getFilename() {
+        return gridFSFile.getFilename();
+    }
+
+    @Override
+    public String getDescription() {
+        return "GridFS file [" + gridFSFile.getObjectId() + "]";
+    }
+}
@@ -0,0 +1,208 @@
+package edu.project.upload.services;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.gridfs.model.GridFSFile;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+import edu.project.upload.configuration.UploadConfiguration;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.Resource;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Keeps content in GridFS, the storage key is the hex id of the GridFS file. The codec of compressed content is
+ * recorded as {@value #CONTENT_ENCODING_FIELD} in the file's metadata.
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(prefix = "upload.storage", name = "backend", havingValue = "GRIDFS", matchIfMissing = true)
+public class GridFsContentStorage implements ContentStorage {
+    static final String GRID_FS_FILES_COLLECTION = "fs.files";
+    static final String GRID_FS_CHUNKS_COLLECTION = "fs.chunks";
+    static final String CONTENT_ENCODING_FIELD = "contentEncoding";
+    private static final String CONTENT_TYPE_FIELD = "_contentType";
+
+    private final GridFsTemplate gridFsTemplate;
+    private final MongoTemplate mongoTemplate;
+    private final ContentCompression contentCompression;
+    private final UploadConfiguration uploadConfiguration;
+    private final ExecutorService chunkWriters = Executors.newVirtualThreadPerTaskExecutor();
+    /**
+     * Batches being inserted by all uploads together, shared by every {@link GridFsChunkOutputStream}.
+     */
+    private final Semaphore inFlightBatches;
+
+    public GridFsContentStorage(GridFsTemplate gridFsTemplate, MongoTemplate mongoTemplate, ContentCompression contentCompression,
+                                UploadConfiguration uploadConfiguration) {
+        this.gridFsTemplate = gridFsTemplate;
+        this.mongoTemplate = mongoTemplate;
+        this.contentCompression = contentCompression;
+        this.uploadConfiguration = uploadConfiguration;
+        UploadConfiguration.GridFs config = uploadConfiguration.getStorage().getGridfs();
+        validate(config);
+        this.inFlightBatches = new Semaphore(config.getMaxTotalInFlightBatches());
+    }
+
+    /**
+     * Fails startup on chunk sizes GridFS cannot store instead of failing every upload of the affected size class.
+     */
+    static void validate(UploadConfiguration.GridFs config) {
+        validateChunkSize("upload.storage.gridfs.unknown-size-chunk-size", config.getUnknownSizeChunkSize());
+        for (UploadConfiguration.SizeClass sizeClass : config.getSizeClasses()) {
+            if (sizeClass.getMinFileSize() == null || sizeClass.getMinFileSize().isNegative()) {
+                throw new IllegalStateException("upload.storage.gridfs.size-classes min-file-size should not be negative: " + sizeClass);
+            }
+            validateChunkSize("upload.storage.gridfs.size-classes chunk-size", sizeClass.getChunkSize());
+        }
+        if (config.getBatchSize() == null || config.getBatchSize().toBytes() <= 0) {
+            throw new IllegalStateException("upload.storage.gridfs.batch-size should be positive");
+        }
+        if (config.getMaxInFlightBatches() <= 0 || config.getMaxTotalInFlightBatches() <= 0) {
+            throw new IllegalStateException("upload.storage.gridfs.max-in-flight-batches and max-total-in-flight-batches should be positive");
+        }
+    }
+
+    private static void validateChunkSize(String name, DataSize chunkSize) {
+        if (chunkSize == null || chunkSize.toBytes() <= 0 || chunkSize.toBytes() > GridFsChunkOutputStream.MAX_CHUNK_SIZE) {
+            throw new IllegalStateException(name + " should be between 1 and " + GridFsChunkOutputStream.MAX_CHUNK_SIZE
+                    + " bytes: " + chunkSize);
+        }
+    }
+
+    @Override
+    public String store(InputStream content, String fileName, String contentType) throws IOException {
+        return store(content, fileName, contentType, -1);
+    }
+
+    /**
+     * Writes the chunks with batched, pipelined inserts in the chunk size of the file's size class, compressing the
+     * content on the way in. A failed write removes the chunks written so far.
+     */
+    @Override
+    public String store(InputStream content, String fileName, String contentType, long expectedSize) throws IOException {
+        ContentCompression.EncodedContent encodedContent = contentCompression.encode(content, contentType);
+        Document metadata = new Document();
+        if (StringUtils.hasText(contentType)) {
+            metadata.append(CONTENT_TYPE_FIELD, contentType);
+        }
+        if (encodedContent.codec() != null) {
+            metadata.append(CONTENT_ENCODING_FIELD, encodedContent.codec().getContentEncoding());
+        }
+        UploadConfiguration.GridFs config = uploadConfiguration.getStorage().getGridfs();
+        int chunkSize = chunkSize(config, expectedSize);
+        GridFsChunkOutputStream outputStream = new GridFsChunkOutputStream(
+                mongoTemplate.getCollection(GRID_FS_CHUNKS_COLLECTION), mongoTemplate.getCollection(GRID_FS_FILES_COLLECTION),
+                fileName, metadata, chunkSize, (int) (config.getBatchSize().toBytes() / chunkSize),
+                config.getMaxInFlightBatches(), inFlightBatches, chunkWriters);
+        try {
+            encodedContent.writeTo(outputStream);
+            outputStream.close();
+        } catch (IOException | RuntimeException e) {
+            outputStream.abort();
+            throw e;
+        }
+        log.debug("Stored {} in GridFS with {} byte chunks", fileName, chunkSize);
+        return outputStream.getFilesId().toHexString();
+    }
+
+    static int chunkSize(UploadConfiguration.GridFs config, long expectedSize) {
+        if (expectedSize < 0) {
+            return (int) config.getUnknownSizeChunkSize().toBytes();
+        }
+        DataSize chunkSize = config.getUnknownSizeChunkSize();
+        long classMinSize = -1;
+        for (UploadConfiguration.SizeClass sizeClass : config.getSizeClasses()) {
+            long minSize = sizeClass.getMinFileSize().toBytes();
+            if (minSize <= expectedSize && minSize > classMinSize) {
+                chunkSize = sizeClass.getChunkSize();
+                classMinSize = minSize;
+            }
+        }
+        return (int) chunkSize.toBytes();
+    }
+
+    @Override
+    public Optional<StoredObject> stat(String key) {
+        GridFSFile gridFSFile = gridFsTemplate.findOne(idQuery(key));
+        log.debug("Found GridFS file: {}", gridFSFile);
+        return Optional.ofNullable(gridFSFile).map(GridFsStoredObject::new);
+    }
+
+    @Override
+    public Resource open(StoredObject storedObject) {
+        GridFSFile gridFSFile = ((GridFsStoredObject) storedObject).gridFSFile();
+        return new GridFsChunkResource(mongoTemplate.getCollection(GRID_FS_CHUNKS_COLLECTION), gridFSFile, gridFSFile.getLength());
+    }
+
+    @Override
+    public void delete(String key) {
+        gridFsTemplate.delete(idQuery(key));
+    }
+
+    /**
+     * Removes the files and their chunks with one {@code $in} delete each instead of a lookup and two deletes per file.
+     */
+    @Override
+    public void deleteAll(Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        List<ObjectId> ids = keys.stream().map(ObjectId::new).toList();
+        mongoTemplate.remove(Query.query(Criteria.where("_id").in(ids)), GRID_FS_FILES_COLLECTION);
+        mongoTemplate.remove(Query.query(Criteria.where("files_id").in(ids)), GRID_FS_CHUNKS_COLLECTION);
+        log.debug("Deleted {} GridFS files", ids.size());
+    }
+
+    /**
+     * Removes the files document first, so the content is gone at once, then the chunks {@code batchSize} at a time
+     * in {@code n} order over the {@code files_id_1_n_1} index.
+     */
+    @Override
+    public boolean deleteGradually(String key, int batchSize, BooleanSupplier pause) {
+        ObjectId id = new ObjectId(key);
+        mongoTemplate.remove(Query.query(Criteria.where("_id").is(id)), GRID_FS_FILES_COLLECTION);
+        MongoCollection<Document> chunks = mongoTemplate.getCollection(GRID_FS_CHUNKS_COLLECTION);
+        while (true) {
+            List<Object> chunkIds = new ArrayList<>();
+            chunks.find(Filters.eq("files_id", id))
+                    .projection(Projections.include("_id"))
+                    .sort(Sorts.ascending("n"))
+                    .limit(batchSize)
+                    .forEach(chunk -> chunkIds.add(chunk.get("_id")));
+            if (!chunkIds.isEmpty()) {
+                chunks.deleteMany(Filters.in("_id", chunkIds));
+            }
+            if (chunkIds.size() < batchSize) {
+                return true;
+            }
+            if (!pause.getAsBoolean()) {
+                return false;
+            }
+        }
+    }
+
+    static Query idQuery(String key) {
+        return Query.query(Criteria.where("_id").is(new ObjectId(key)));
+    }
+}
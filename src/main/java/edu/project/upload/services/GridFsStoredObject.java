@@ -0,0 +1,24 @@
+package edu.project.upload.services;
+
+import com.mongodb.client.gridfs.model.GridFSFile;
+
+import java.util.Optional;
+
+record GridFsStoredObject(GridFSFile gridFSFile) implements StoredObject {
+    @Override
+    public String key() {
+        return gridFSFile.getObjectId().toHexString();
+    }
+
+    @Override
+    public long length() {
+        return gridFSFile.getLength();
+    }
+
+    @Override
+    public Optional<ContentCodec> codec() {
+        return Optional.ofNullable(gridFSFile.getMetadata())
+                .map(metadata -> metadata.getString(GridFsContentStorage.CONTENT_ENCODING_FIELD))
+                .flatMap(ContentCodec::forContentEncoding);
+    }
+}
@@ -0,0 +1,37 @@
+package edu.project.upload.services;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Resolves {@code upload.hashAlgo}: {@value XxHash64Digest#ALGORITHM} and {@value TreeDigest#ALGORITHM} are built in,
+ * any other name is looked up in the JCA providers.
+ */
+final class HashAlgorithms {
+    private static final Set<String> COLLISION_RESISTANT = Set.of(
+            "SHA-256", "SHA-384", "SHA-512", "SHA-512/256", "SHA3-256", "SHA3-384", "SHA3-512", TreeDigest.ALGORITHM);
+
+    private HashAlgorithms() {
+    }
+
+    static MessageDigest newDigest(String algorithm) throws NoSuchAlgorithmException {
+        if (XxHash64Digest.ALGORITHM.equalsIgnoreCase(algorithm)) {
+            return new XxHash64Digest();
+        }
+        if (TreeDigest.ALGORITHM.equalsIgnoreCase(algorithm)) {
+            return new TreeDigest();
+        }
+        return MessageDigest.getInstance(algorithm);
+    }
+
+    /**
+     * Content is only shared between files by hash when colliding content cannot be crafted on purpose. That rules
+     * out {@value XxHash64Digest#ALGORITHM}, but also MD5 and SHA-1, whose collisions take seconds to compute, so
+     * only algorithms listed here qualify.
+     */
+    static boolean isCollisionResistant(String algorithm) {
+        return algorithm != null && COLLISION_RESISTANT.contains(algorithm.toUpperCase(Locale.ROOT));
+    }
+}
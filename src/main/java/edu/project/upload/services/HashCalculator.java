@@ -2,7 +2,35 @@ package edu.project.upload.services;
 
 
 import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 
 public interface HashCalculator {
     String calculateHash(InputStream inputStream);
+
+    /**
+     * Wraps the stream so the digest is updated while somebody else consumes it.
+     */
+    DigestInputStream digestStream(InputStream inputStream);
+
+    /**
+     * Fresh digest for callers that feed the content piece by piece.
+     */
+    MessageDigest newDigest();
+
+    String getHash(MessageDigest messageDigest);
+
+    default String getHash(DigestInputStream digestInputStream) {
+        return getHash(digestInputStream.getMessageDigest());
+    }
+
+    /**
+     * Name of the configured algorithm, stored with every hash.
+     */
+    String getAlgorithm();
+
+    /**
+     * Whether equal hashes may be trusted to mean equal content, which is what sharing stored content relies on.
+     */
+    boolean isCollisionResistant();
 }
@@ -0,0 +1,16 @@
+package edu.project.upload.services;
+
+import java.nio.file.Path;
+import java.util.Optional;
+
+record LocalStoredObject(String key, Path path, long length) implements StoredObject {
+    @Override
+    public Optional<Path> localPath() {
+        return Optional.of(path);
+    }
+
+    @Override
+    public Optional<ContentCodec> codec() {
+        return FileSystemLayout.codec(key);
+    }
+}
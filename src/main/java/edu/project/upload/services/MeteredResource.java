@@ -0,0 +1,46 @@
+package edu.project.upload.services;
+
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A resource whose streams count towards the download metrics. Spring MVC opens one stream per range it serves and
+ * skips to the range's start, the skipped bytes are not counted.
+ */
+class MeteredResource extends AbstractResource {
+    private final Resource resource;
+    private final UploadMetrics uploadMetrics;
+
+    MeteredResource(Resource resource, UploadMetrics uploadMetrics) {
+        this.resource = resource;
+        this.uploadMetrics = uploadMetrics;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return uploadMetrics.meteredDownload(resource.getInputStream());
+    }
+
+    @Override
+    public boolean exists() {
+        return resource.exists();
+    }
+
+    @Override
+    public long contentLength() throws IOException {
+        return resource.contentLength();
+    }
+
+    @Override
+    public String getFilename() {
+        return resource.getFilename();
+    }
+
+    @Override
+    public String getDescription() {
+        return "metered " + resource.getDescription();
+    }
+}
@@ -0,0 +1,174 @@
+package edu.project.upload.services;
+
+import edu.project.upload.model.ContentBlob;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class MongoBlobStore implements BlobStore {
+    private final MongoTemplate mongoTemplate;
+    private final ContentDeletionQueue contentDeletionQueue;
+    private final HashCalculator hashCalculator;
+
+    @Override
+    public Optional<String> reference(String hash) {
+        if (!hashCalculator.isCollisionResistant()) {
+            return Optional.empty();
+        }
+        ContentBlob blob = mongoTemplate.findAndModify(
+                Query.query(Criteria.where("_id").is(hash).and("refCount").gt(0)),
+                new Update().inc("refCount", 1),
+                FindAndModifyOptions.options().returnNew(true),
+                ContentBlob.class);
+        if (blob == null) {
+            return Optional.empty();
+        }
+        log.debug("Referenced blob: {}, refCount: {}", hash, blob.getRefCount());
+        return Optional.of(blob.getStorageKey());
+    }
+
+    @Override
+    public String register(String hash, String storageKey, long size) {
+        if (!hashCalculator.isCollisionResistant()) {
+            // not shared, so the content stays owned by its single file
+            return storageKey;
+        }
+        while (true) {
+            Optional<String> existing = reference(hash);
+            if (existing.isPresent()) {
+                log.debug("Blob {} already stored, dropping copy: {}", hash, storageKey);
+                contentDeletionQueue.enqueue(List.of(storageKey));
+                return existing.get();
+            }
+            try {
+                mongoTemplate.insert(ContentBlob.builder()
+                        .hash(hash)
+                        .storageKey(storageKey)
+                        .size(size)
+                        .refCount(1)
+                        .createdDate(LocalDateTime.now())
+                        .build());
+                log.debug("Registered blob: {}, storageKey: {}", hash, storageKey);
+                return storageKey;
+            } catch (DuplicateKeyException e) {
+                // either a concurrent upload registered the hash first or the last reference was just released
+                log.debug("Concurrent registration of blob: {}", hash);
+                purgeUnreferenced(hash);
+            }
+        }
+    }
+
+    @Override
+    public void release(String hash, String storageKey) {
+        ContentBlob blob = mongoTemplate.findAndModify(
+                Query.query(Criteria.where("_id").is(hash).and("storageKey").is(storageKey)),
+                new Update().inc("refCount", -1),
+                FindAndModifyOptions.options().returnNew(true),
+                ContentBlob.class);
+        if (blob == null) {
+            // content stored before blobs were shared is owned by its single file
+            log.debug("No blob for hash: {}, deleting stored content: {}", hash, storageKey);
+            contentDeletionQueue.enqueue(List.of(storageKey));
+            return;
+        }
+        log.debug("Released blob: {}, refCount: {}", hash, blob.getRefCount());
+        if (blob.getRefCount() <= 0) {
+            purgeUnreferenced(hash);
+        }
+    }
+
+    /**
+     * Decrements all blobs with one bulk write, by the number of references released on each, then removes the ones
+     * that dropped to zero and queues their content for deletion in one go. Content without a blob is owned by its
+     * file and queued as well. Queuing content twice, when a concurrent registration purged a blob as well, is
+     * harmless.
+     */
+    @Override
+    public void releaseAll(Collection<Reference> references) {
+        if (references.isEmpty()) {
+            return;
+        }
+        Map<Reference, Long> counts = references.stream()
+                .collect(Collectors.groupingBy(Function.identity(), Collectors.counting()));
+        BulkOperations decrements = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ContentBlob.class);
+        counts.forEach((reference, count) -> decrements.updateOne(
+                Query.query(Criteria.where("_id").is(reference.hash()).and("storageKey").is(reference.storageKey())),
+                new Update().inc("refCount", -count)));
+        decrements.execute();
+
+        Set<String> hashes = counts.keySet().stream().map(Reference::hash).collect(Collectors.toSet());
+        Map<String, ContentBlob> blobs = new HashMap<>();
+        for (ContentBlob blob : mongoTemplate.find(Query.query(Criteria.where("_id").in(hashes)), ContentBlob.class)) {
+            blobs.put(blob.getHash(), blob);
+        }
+        List<String> unreferencedHashes = new ArrayList<>();
+        List<String> deletedKeys = new ArrayList<>();
+        for (Reference reference : counts.keySet()) {
+            ContentBlob blob = blobs.get(reference.hash());
+            if (blob == null || !reference.storageKey().equals(blob.getStorageKey())) {
+                deletedKeys.add(reference.storageKey());
+            } else if (blob.getRefCount() <= 0) {
+                unreferencedHashes.add(reference.hash());
+                deletedKeys.add(reference.storageKey());
+            }
+        }
+        if (!unreferencedHashes.isEmpty()) {
+            mongoTemplate.remove(Query.query(Criteria.where("_id").in(unreferencedHashes).and("refCount").lte(0)), ContentBlob.class);
+        }
+        contentDeletionQueue.enqueue(deletedKeys);
+        log.debug("Released {} references, queued {} stored contents for deletion", references.size(), deletedKeys.size());
+    }
+
+    @Override
+    public void releaseUnshared(Collection<Reference> references) {
+        if (references.isEmpty()) {
+            return;
+        }
+        Set<String> hashes = references.stream().map(Reference::hash).collect(Collectors.toSet());
+        Map<String, String> blobKeys = new HashMap<>();
+        for (ContentBlob blob : mongoTemplate.find(Query.query(Criteria.where("_id").in(hashes)), ContentBlob.class)) {
+            blobKeys.put(blob.getHash(), blob.getStorageKey());
+        }
+        List<String> ownedKeys = references.stream()
+                .filter(reference -> !reference.storageKey().equals(blobKeys.get(reference.hash())))
+                .map(Reference::storageKey)
+                .distinct()
+                .toList();
+        contentDeletionQueue.enqueue(ownedKeys);
+        log.debug("Queued {} unshared stored contents of {} references for deletion", ownedKeys.size(), references.size());
+    }
+
+    /**
+     * Whoever manages to remove the unreferenced blob document owns the deletion of its content.
+     */
+    private void purgeUnreferenced(String hash) {
+        ContentBlob removed = mongoTemplate.findAndRemove(
+                Query.query(Criteria.where("_id").is(hash).and("refCount").lte(0)),
+                ContentBlob.class);
+        if (removed != null) {
+            contentDeletionQueue.enqueue(List.of(removed.getStorageKey()));
+            log.debug("Deleted last copy of blob: {}", hash);
+        }
+    }
+}
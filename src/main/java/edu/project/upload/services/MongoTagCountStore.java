@@ -0,0 +1,217 @@
+package edu.project.upload.services;
+
+import edu.project.upload.model.FileInfo;
+import edu.project.upload.model.UserTags;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class MongoTagCountStore implements TagCountStore {
+    private static final int MAX_REBUILD_ATTEMPTS = 5;
+    private static final String LOCKS_COLLECTION = "locks";
+    private static final String STARTUP_REBUILD_CLAIM = "tag-counts-startup-rebuild";
+    private static final Duration STARTUP_REBUILD_CLAIM_TIMEOUT = Duration.ofHours(1);
+    /**
+     * Bulk operations pull their {@code tagDeltas} entries right after counting them, older ones were left by a crash.
+     */
+    private static final Duration STALE_TAG_DELTA_AGE = Duration.ofMinutes(10);
+    private static final String TAG_DELTA_AT = MongoUploadService.TAG_DELTAS + ".at";
+
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public void increment(String userId, Collection<String> tags, long files) {
+        if (tags == null || tags.isEmpty() || files <= 0) {
+            return;
+        }
+        mongoTemplate.upsert(TagCounts.userQuery(userId), TagCounts.incrementUpdate(tags, files), UserTags.class);
+    }
+
+    @Override
+    public void decrement(String userId, Collection<String> tags) {
+        if (tags == null || tags.isEmpty()) {
+            return;
+        }
+        mongoTemplate.updateFirst(TagCounts.userQuery(userId), TagCounts.incrementUpdate(tags, -1), UserTags.class);
+        for (String tag : tags) {
+            mongoTemplate.updateFirst(TagCounts.exhaustedTagQuery(userId, tag), TagCounts.unsetUpdate(tag), UserTags.class);
+        }
+    }
+
+    @Override
+    public void add(String userId, Map<String, Long> deltas) {
+        Map<String, Long> changes = new HashMap<>(deltas);
+        changes.values().removeIf(delta -> delta == 0);
+        if (changes.isEmpty()) {
+            return;
+        }
+        if (changes.values().stream().anyMatch(delta -> delta > 0)) {
+            mongoTemplate.upsert(TagCounts.userQuery(userId), TagCounts.deltaUpdate(changes), UserTags.class);
+        } else {
+            mongoTemplate.updateFirst(TagCounts.userQuery(userId), TagCounts.deltaUpdate(changes), UserTags.class);
+        }
+        changes.forEach((tag, delta) -> {
+            if (delta < 0) {
+                mongoTemplate.updateFirst(TagCounts.exhaustedTagQuery(userId, tag), TagCounts.unsetUpdate(tag), UserTags.class);
+            }
+        });
+    }
+
+    @Override
+    public Map<String, Long> counts(String userId) {
+        return TagCounts.decode(mongoTemplate.findById(userId, UserTags.class));
+    }
+
+    @Override
+    @Scheduled(cron = "${upload.tags.rebuild-cron:-}")
+    public void rebuild() {
+        LocalDateTime started = LocalDateTime.now();
+        log.info("Rebuilding tag counts");
+        Aggregation users = Aggregation.newAggregation(List.<AggregationOperation>of(
+                        context -> new Document("$group", new Document("_id", "$userId"))))
+                .withOptions(AggregationOptions.builder().allowDiskUse(true).build());
+        try (Stream<Document> userIds = mongoTemplate.aggregateStream(users, FileInfo.class, Document.class)) {
+            userIds.forEach(user -> rebuild(user.getString("_id")));
+        }
+        // users that no longer have files
+        Query stale = Query.query(new Criteria().orOperator(
+                Criteria.where("rebuiltAt").lt(started), Criteria.where("rebuiltAt").is(null)));
+        stale.fields().include("_id");
+        try (Stream<UserTags> userTags = mongoTemplate.stream(stale, UserTags.class)) {
+            userTags.forEach(user -> rebuild(user.getUserId()));
+        }
+        log.info("Rebuilt tag counts");
+    }
+
+    /**
+     * Recounts the tags of the user's files and replaces the stored counts unless they changed while counting, in which
+     * case the recount starts over; deleted files do not count. A count update that lands between counting and
+     * replacing is therefore never overwritten. Stale {@code tagDeltas} entries are stripped first: whether or not
+     * their bulk operation counted them, the recount covers the tags they describe.
+     */
+    @Override
+    public void rebuild(String userId) {
+        stripStaleTagDeltas(userId);
+        for (int attempt = 1; attempt <= MAX_REBUILD_ATTEMPTS; attempt++) {
+            UserTags current = mongoTemplate.findById(userId, UserTags.class);
+            if (replaceCounts(userId, current, countTags(userId))) {
+                return;
+            }
+        }
+        log.warn("Tag counts of user {} kept changing while they were rebuilt, keeping them", userId);
+    }
+
+    private void stripStaleTagDeltas(String userId) {
+        Date staleBefore = Date.from(Instant.now().minus(STALE_TAG_DELTA_AGE));
+        long stripped = mongoTemplate.updateMulti(
+                Query.query(Criteria.where("userId").is(userId).and(TAG_DELTA_AT).lt(staleBefore)),
+                new Update().pull(MongoUploadService.TAG_DELTAS, new Document("at", new Document("$lt", staleBefore))),
+                FileInfo.class).getModifiedCount();
+        if (stripped > 0) {
+            log.warn("Stripped stale tag deltas from {} files of user {}", stripped, userId);
+        }
+    }
+
+    private Map<String, Long> countTags(String userId) {
+        Aggregation aggregation = Aggregation.newAggregation(List.<AggregationOperation>of(
+                Aggregation.match(Criteria.where("userId").is(userId).and("deletedAt").is(null)),
+                context -> new Document("$unwind", "$tags"),
+                context -> new Document("$group", new Document("_id", "$tags").append("count", new Document("$sum", 1)))));
+        Map<String, Long> counts = new HashMap<>();
+        for (Document tag : mongoTemplate.aggregate(aggregation, FileInfo.class, Document.class)) {
+            counts.put(TagCounts.encodeKey(tag.getString("_id")), ((Number) tag.get("count")).longValue());
+        }
+        return counts;
+    }
+
+    /**
+     * Compare-and-set of the user's counts against the version read before counting.
+     *
+     * @return whether the counts were replaced
+     */
+    private boolean replaceCounts(String userId, UserTags current, Map<String, Long> counts) {
+        if (current == null) {
+            if (counts.isEmpty()) {
+                return true;
+            }
+            try {
+                mongoTemplate.insert(UserTags.builder().userId(userId).counts(counts).rebuiltAt(LocalDateTime.now()).version(0L).build());
+                return true;
+            } catch (DuplicateKeyException e) {
+                // the first count update of the user came in while counting
+                return false;
+            }
+        }
+        Query unchanged = Query.query(Criteria.where("_id").is(userId).and(TagCounts.VERSION).is(current.getVersion()));
+        if (counts.isEmpty()) {
+            return mongoTemplate.remove(unchanged, UserTags.class).getDeletedCount() > 0;
+        }
+        return mongoTemplate.updateFirst(unchanged, new Update()
+                .set("counts", counts)
+                .set("rebuiltAt", LocalDateTime.now())
+                .inc(TagCounts.VERSION, 1), UserTags.class).getMatchedCount() > 0;
+    }
+
+    /**
+     * Fills the counts for data uploaded before they were maintained. Only the instance that claims the rebuild runs it
+     * when several start at once. Otherwise recounts the users whose files still carry stale {@code tagDeltas} entries,
+     * which a bulk operation that crashed before counting them left behind.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildIfEmpty() {
+        if (mongoTemplate.estimatedCount(UserTags.class) == 0 && mongoTemplate.estimatedCount(FileInfo.class) > 0) {
+            if (claimStartupRebuild()) {
+                rebuild();
+            }
+            return;
+        }
+        // served by the sparse tagDeltas.op index, which only holds files with entries
+        Query stale = Query.query(Criteria.where(MongoUploadService.TAG_DELTAS + ".op").exists(true)
+                .and(TAG_DELTA_AT).lt(Date.from(Instant.now().minus(STALE_TAG_DELTA_AGE))));
+        for (String userId : mongoTemplate.findDistinct(stale, "userId", FileInfo.class, String.class)) {
+            rebuild(userId);
+        }
+    }
+
+    /**
+     * Upserts the claim document unless another instance claimed it within {@link #STARTUP_REBUILD_CLAIM_TIMEOUT}; the
+     * unique {@code _id} makes the upsert of all but one concurrent instance fail.
+     */
+    private boolean claimStartupRebuild() {
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            mongoTemplate.upsert(Query.query(Criteria.where("_id").is(STARTUP_REBUILD_CLAIM)
+                            .and("claimedAt").lt(now.minus(STARTUP_REBUILD_CLAIM_TIMEOUT))),
+                    Update.update("claimedAt", now), LOCKS_COLLECTION);
+            return true;
+        } catch (DuplicateKeyException e) {
+            log.debug("Tag counts are being rebuilt by another instance");
+            return false;
+        }
+    }
+}
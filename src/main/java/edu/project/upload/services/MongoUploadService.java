@@ -1,23 +1,46 @@
 package edu.project.upload.services;
 
-import com.mongodb.client.gridfs.model.GridFSFile;
+import edu.project.upload.configuration.UploadConfiguration;
+import com.mongodb.ErrorCategory;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.result.UpdateResult;
+import edu.project.upload.model.BatchUploadItem;
+import edu.project.upload.model.BulkUpdateResult;
+import edu.project.upload.model.CursorPage;
 import edu.project.upload.model.FileInfo;
 import edu.project.upload.model.Visibility;
 import edu.project.upload.repositories.FileInfoRepository;
+import edu.project.upload.requests.FileArchiveRequest;
+import edu.project.upload.requests.FileBatchUploadRequest;
+import edu.project.upload.requests.FileBulkRequest;
+import edu.project.upload.requests.FileListRequest;
 import edu.project.upload.requests.FileUploadRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.bson.types.ObjectId;
+import org.bson.Document;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.core.io.Resource;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationExpression;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+import org.springframework.data.mongodb.core.query.BasicQuery;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
-import org.springframework.data.mongodb.gridfs.GridFsResource;
-import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
@@ -26,80 +49,377 @@ import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class MongoUploadService implements UploadService {
+    static final int MAX_TAGS = 5;
+    static final String TAG_DELTAS = "tagDeltas";
+
     private final FileInfoRepository fileInfoRepository;
-    private final GridFsTemplate gridFsTemplate;
+    private final ContentStorage contentStorage;
     private final HashCalculator hashCalculator;
     private final MongoTemplate mongoTemplate;
+    private final UploadConfiguration uploadConfiguration;
+    private final BlobStore blobStore;
+    private final TagCountStore tagCountStore;
+    private final FileDescriptorCache fileDescriptorCache;
+    private final UploadMetrics uploadMetrics;
+    private final FileDeletionWorker fileDeletionWorker;
+    private final ContentCache contentCache;
 
     @Override
     public FileInfo uploadFile(FileUploadRequest request) {
-        Set<String> tags = request.getTags() != null ? new HashSet<>(request.getTags()) : new HashSet<>();
-        Set<String> normalizedTags = getNormalizedTags(tags);
-        String hash = validateFileAndGetHash(request);
-        String fileId = UUID.randomUUID().toString();
-        String downloadLink = "/api/v1/files/" + fileId + "/download";
         String contentType = request.getContentType();
         if (!StringUtils.hasText(contentType)) {
             contentType = request.getFile().getContentType();
         }
-        ObjectId gridFsId;
+        String storedContentType = contentType;
+        return upload(request.getUserId(), request.getFileName(), request.getVisibility(), request.getTags(), contentType,
+                () -> uploadConfiguration.isSinglePassUpload()
+                        ? storeAndHash(request.getFile(), request.getFileName(), storedContentType, request.getFile().getSize())
+                        : hashAndStore(request, storedContentType));
+    }
+
+    /**
+     * Always single-pass: the content cannot be read twice, so content that is stored already is written
+     * once more and dropped after hashing.
+     */
+    @Override
+    public FileInfo uploadFile(String userId, String fileName, Visibility visibility, Collection<String> tags,
+                               String contentType, InputStream content) {
+        return upload(userId, fileName, visibility, tags, contentType, () -> storeAndHash(() -> content, fileName, contentType, -1));
+    }
+
+    private FileInfo upload(String userId, String fileName, Visibility visibility, Collection<String> tags,
+                            String contentType, Supplier<StoredContent> store) {
+        Set<String> normalizedTags = normalizeTags(tags);
+        uploadMetrics.uploadStarted();
+        long uploadedBytes = 0;
         try {
-            gridFsId = gridFsTemplate.store(request.getFile().getInputStream(), request.getFileName(), contentType);
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to store file", e);
+            StoredContent storedContent = store.get();
+            try {
+                FileInfo fileInfo = saveFileInfo(userId, fileName, visibility, normalizedTags,
+                        contentType, storedContent.size(), storedContent.hash(), storedContent.storageKey());
+                uploadedBytes = storedContent.size();
+                return fileInfo;
+            } catch (RuntimeException e) {
+                blobStore.release(storedContent.hash(), storedContent.storageKey());
+                throw e;
+            }
+        } finally {
+            uploadMetrics.uploadFinished(uploadedBytes);
+        }
+    }
+
+    /**
+     * Stores the files in parallel, checks name and content conflicts of the whole batch with one query and inserts
+     * the metadata with one unordered bulk insert. Every file gets its own outcome, a failing file does not abort
+     * the others.
+     */
+    @Override
+    public List<BatchUploadItem> uploadFiles(FileBatchUploadRequest request) {
+        List<MultipartFile> files = request.getFiles() == null ? List.of() : request.getFiles();
+        if (!StringUtils.hasText(request.getUserId())) {
+            throw new IllegalArgumentException("User should be specified");
+        }
+        if (files.isEmpty()) {
+            throw new IllegalArgumentException("No files in batch");
+        }
+        int maxFiles = uploadConfiguration.getBatch().getMaxFiles();
+        if (files.size() > maxFiles) {
+            throw new IllegalArgumentException("Max " + maxFiles + " files per batch");
+        }
+        String userId = request.getUserId();
+        Set<String> normalizedTags = normalizeTags(request.getTags());
+        BatchUploadItem[] items = new BatchUploadItem[files.size()];
+        Set<String> fileNames = new HashSet<>();
+        for (int i = 0; i < files.size(); i++) {
+            String fileName = files.get(i).getOriginalFilename();
+            if (!StringUtils.hasText(fileName)) {
+                items[i] = failedItem(fileName, HttpStatus.BAD_REQUEST, "File name is missing");
+            } else if (!fileNames.add(fileName)) {
+                items[i] = failedItem(fileName, HttpStatus.CONFLICT, "Duplicate file name in batch");
+            }
+        }
+
+        StoredContent[] storedContents = storeBatch(files, items);
+
+        List<String> hashes = Arrays.stream(storedContents).filter(Objects::nonNull).map(StoredContent::hash).toList();
+        fileDeletionWorker.purgeTombstones(userId, fileNames, hashes);
+        Query existingQuery = Query.query(Criteria.where("userId").is(userId).orOperator(
+                Criteria.where("fileName").in(fileNames),
+                Criteria.where("hash").in(hashes)));
+        existingQuery.fields().include("fileName", "hash");
+        Set<String> takenNames = new HashSet<>();
+        Set<String> takenHashes = new HashSet<>();
+        for (FileInfo existing : mongoTemplate.find(existingQuery, FileInfo.class)) {
+            takenNames.add(existing.getFileName());
+            takenHashes.add(existing.getHash());
         }
-        FileInfo fileInfo = FileInfo.builder()
+
+        List<FileInfo> fileInfos = new ArrayList<>();
+        List<Integer> fileInfoItems = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            StoredContent storedContent = storedContents[i];
+            if (items[i] != null || storedContent == null) {
+                continue;
+            }
+            MultipartFile file = files.get(i);
+            String fileName = file.getOriginalFilename();
+            if (takenNames.contains(fileName)) {
+                items[i] = failedItem(fileName, HttpStatus.CONFLICT, "File with this filename already exists for user");
+            } else if (!takenHashes.add(storedContent.hash())) {
+                items[i] = failedItem(fileName, HttpStatus.CONFLICT, "File with this content already exists for user");
+            } else {
+                fileInfos.add(newFileInfo(userId, fileName, request.getVisibility(), normalizedTags, file.getContentType(),
+                        storedContent.size(), storedContent.hash(), hashCalculator.getAlgorithm(), storedContent.storageKey()));
+                fileInfoItems.add(i);
+                continue;
+            }
+            blobStore.release(storedContent.hash(), storedContent.storageKey());
+        }
+
+        Map<Integer, BulkWriteError> insertErrors = insertBatch(fileInfos);
+        long created = 0;
+        long uploadedBytes = 0;
+        for (int n = 0; n < fileInfos.size(); n++) {
+            FileInfo fileInfo = fileInfos.get(n);
+            int i = fileInfoItems.get(n);
+            BulkWriteError error = insertErrors.get(n);
+            if (error == null) {
+                items[i] = new BatchUploadItem(fileInfo.getFileName(), HttpStatus.CREATED.value(), fileInfo, null);
+                created++;
+                uploadedBytes += fileInfo.getFileSize();
+            } else {
+                blobStore.release(fileInfo.getHash(), fileInfo.getStorageKey());
+                items[i] = error.getCategory() == ErrorCategory.DUPLICATE_KEY
+                        ? failedItem(fileInfo.getFileName(), HttpStatus.CONFLICT, duplicateFileMessage(error.getMessage()))
+                        : failedItem(fileInfo.getFileName(), HttpStatus.INTERNAL_SERVER_ERROR, "Failed to save file info");
+            }
+        }
+        tagCountStore.increment(userId, normalizedTags, created);
+        uploadMetrics.uploaded(uploadedBytes);
+        log.debug("Batch upload of user {}: {} of {} files created", userId, created, files.size());
+        return Arrays.asList(items);
+    }
+
+    /**
+     * Runs single-pass stores of the files that are still valid on virtual threads, {@code upload.batch.parallelism}
+     * at a time. A file that fails to store gets its failed item, the others go on.
+     */
+    private StoredContent[] storeBatch(List<MultipartFile> files, BatchUploadItem[] items) {
+        StoredContent[] storedContents = new StoredContent[files.size()];
+        Semaphore permits = new Semaphore(uploadConfiguration.getBatch().getParallelism());
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < files.size(); i++) {
+                if (items[i] != null) {
+                    continue;
+                }
+                int index = i;
+                executor.execute(() -> {
+                    MultipartFile file = files.get(index);
+                    permits.acquireUninterruptibly();
+                    uploadMetrics.uploadStarted();
+                    try {
+                        storedContents[index] = storeAndHash(file, file.getOriginalFilename(), file.getContentType(), file.getSize());
+                    } catch (RuntimeException e) {
+                        log.warn("Failed to store batch file {}", file.getOriginalFilename(), e);
+                        items[index] = failedItem(file.getOriginalFilename(), HttpStatus.INTERNAL_SERVER_ERROR, "Failed to store file");
+                    } finally {
+                        uploadMetrics.uploadFinished(0);
+                        permits.release();
+                    }
+                });
+            }
+        }
+        return storedContents;
+    }
+
+    /**
+     * One unordered bulk insert, so a conflicting document does not stop the ones after it.
+     *
+     * @return the write errors by position in {@code fileInfos}
+     */
+    private Map<Integer, BulkWriteError> insertBatch(List<FileInfo> fileInfos) {
+        if (fileInfos.isEmpty()) {
+            return Map.of();
+        }
+        long start = System.nanoTime();
+        try {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, FileInfo.class).insert(fileInfos).execute();
+            return Map.of();
+        } catch (BulkOperationException e) {
+            Map<Integer, BulkWriteError> errors = new HashMap<>();
+            for (BulkWriteError error : e.getErrors()) {
+                errors.put(error.getIndex(), error);
+            }
+            return errors;
+        } finally {
+            uploadMetrics.recordSave(start);
+        }
+    }
+
+    private static BatchUploadItem failedItem(String fileName, HttpStatus status, String error) {
+        return new BatchUploadItem(fileName, status.value(), null, error);
+    }
+
+    /**
+     * Creates the metadata for content that is already stored. Name and content uniqueness per user
+     * are enforced by the unique indexes on {@code files}, so a conflicting upload fails here, unless the conflict
+     * is a deleted file that can be removed right away.
+     */
+    FileInfo saveFileInfo(String userId, String fileName, Visibility visibility, Set<String> normalizedTags,
+                          String contentType, long fileSize, String hash, String storageKey) {
+        FileInfo fileInfo = newFileInfo(userId, fileName, visibility, normalizedTags, contentType, fileSize,
+                hash, hashCalculator.getAlgorithm(), storageKey);
+        long start = System.nanoTime();
+        try {
+            mongoTemplate.insert(fileInfo);
+        } catch (DuplicateKeyException e) {
+            if (!fileDeletionWorker.purgeTombstones(userId, List.of(fileName), List.of(hash))) {
+                throw duplicateFileError(e);
+            }
+            try {
+                mongoTemplate.insert(fileInfo);
+            } catch (DuplicateKeyException retryError) {
+                throw duplicateFileError(retryError);
+            }
+        } finally {
+            uploadMetrics.recordSave(start);
+        }
+        log.debug("Saved file info in Mongo: {}", fileInfo.getFileId());
+        tagCountStore.increment(userId, normalizedTags);
+        return fileInfo;
+    }
+
+    static IllegalArgumentException duplicateFileError(DuplicateKeyException e) {
+        return new IllegalArgumentException(duplicateFileMessage(e.getMessage()), e);
+    }
+
+    private static String duplicateFileMessage(String duplicateKeyMessage) {
+        if (String.valueOf(duplicateKeyMessage).contains(FileInfo.USER_HASH_INDEX)) {
+            return "File with this content already exists for user";
+        }
+        return "File with this filename already exists for user";
+    }
+
+    static FileInfo newFileInfo(String userId, String fileName, Visibility visibility, Set<String> normalizedTags,
+                                String contentType, long fileSize, String hash, String hashAlgo, String storageKey) {
+        String fileId = UUID.randomUUID().toString();
+        String downloadLink = "/api/v1/files/" + fileId + "/download";
+        return FileInfo.builder()
                 .fileId(fileId)
-                .userId(request.getUserId())
-                .fileName(request.getFileName())
+                .userId(userId)
+                .fileName(fileName)
                 .tags(normalizedTags)
-                .fileSize(request.getFile().getSize())
-                .visibility(request.getVisibility())
+                .fileSize(fileSize)
+                .visibility(visibility)
                 .uploadDate(LocalDateTime.now())
                 .hash(hash)
+                .hashAlgo(hashAlgo)
                 .contentType(contentType)
                 .downloadLink(downloadLink)
-                .gridFsId(gridFsId.toHexString())
+                .storageKey(storageKey)
                 .build();
-        log.debug("Saving file info: {}", fileInfo);
-        fileInfoRepository.save(fileInfo);
-        log.debug("Saved file info in Mongo: {}", fileInfo);
-        return fileInfo;
     }
 
-    private String validateFileAndGetHash(FileUploadRequest request) {
-        log.debug("Validating file upload request: {}", request);
-        if (fileInfoRepository.existsByUserIdAndFileName(request.getUserId(), request.getFileName())) {
-            throw new IllegalArgumentException("File with this filename already exists for user");
-        }
+    /**
+     * Two-pass mode: hashes the spooled upload first, so content that is already stored by anybody
+     * is only linked and never written again.
+     */
+    private StoredContent hashAndStore(FileUploadRequest request, String contentType) {
         String hash;
+        long hashStart = System.nanoTime();
         try {
             hash = hashCalculator.calculateHash(request.getFile().getInputStream());
         } catch (IOException e) {
             throw new RuntimeException("Failed to calculate file hash", e);
         }
-        if (fileInfoRepository.existsByUserIdAndHash(request.getUserId(), hash)) {
-            throw new IllegalArgumentException("File with this content already exists for user");
+        uploadMetrics.recordHash(hashStart);
+        Optional<String> existing = blobStore.reference(hash);
+        if (existing.isPresent()) {
+            log.debug("Linking upload to stored blob: {}", hash);
+            return new StoredContent(existing.get(), hash, request.getFile().getSize());
+        }
+        long storeStart = System.nanoTime();
+        try {
+            long size = request.getFile().getSize();
+            String storageKey = contentStorage.store(request.getFile().getInputStream(), request.getFileName(), contentType, size);
+            uploadMetrics.recordStore(storeStart);
+            return new StoredContent(blobStore.register(hash, storageKey, size), hash, size);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to store file", e);
+        }
+    }
+
+    /**
+     * Single-pass mode: the digest is computed while the bytes go to the storage backend. Content that turns out to be
+     * stored already is linked to the existing blob and the fresh copy is dropped; a duplicate for the same
+     * user is rejected by the metadata insert, which releases the blob again.
+     */
+    private StoredContent storeAndHash(InputStreamSource source, String fileName, String contentType, long expectedSize) {
+        String storageKey;
+        String hash;
+        long size;
+        long storeStart = System.nanoTime();
+        try (CountingInputStream countingStream = new CountingInputStream(source.getInputStream());
+             DigestInputStream digestInputStream = hashCalculator.digestStream(countingStream)) {
+            storageKey = contentStorage.store(digestInputStream, fileName, contentType, expectedSize);
+            hash = hashCalculator.getHash(digestInputStream);
+            size = countingStream.getCount();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to store file", e);
+        }
+        uploadMetrics.recordStore(storeStart);
+        return new StoredContent(blobStore.register(hash, storageKey, size), hash, size);
+    }
+
+    /**
+     * Early check for callers that want to fail before any content is transferred. The unique index stays
+     * the authority, this only saves a client from uploading in vain.
+     */
+    void validateFileName(String userId, String fileName) {
+        if (fileInfoRepository.existsByUserIdAndFileNameAndDeletedAtIsNull(userId, fileName)) {
+            throw new IllegalArgumentException("File with this filename already exists for user");
         }
-        return hash;
     }
 
-    private Set<String> getNormalizedTags(Set<String> tags) {
-        if (tags.size() > 5) {
-            throw new IllegalArgumentException("Max 5 tags allowed");
+    private record StoredContent(String storageKey, String hash, long size) {
+    }
+
+    static Set<String> normalizeTags(Collection<String> tags) {
+        if (tags == null) {
+            return new HashSet<>();
+        }
+        Set<String> uniqueTags = new HashSet<>(tags);
+        if (uniqueTags.size() > MAX_TAGS) {
+            throw new IllegalArgumentException("Max " + MAX_TAGS + " tags allowed");
         }
         Set<String> normalizedTags = new HashSet<>();
-        for (String tag : tags) {
+        for (String tag : uniqueTags) {
             normalizedTags.add(tag.toLowerCase());
         }
         return normalizedTags;
@@ -107,17 +427,26 @@ public class MongoUploadService implements UploadService {
 
     @Override
     public FileInfo renameFile(String fileId, String newFileName, String userId) {
-        FileInfo fileInfo = fileInfoRepository.findById(fileId).orElseThrow();
+        FileInfo fileInfo = findLiveFile(fileId);
         if (!fileInfo.getUserId().equals(userId)) {
             throw new AuthException("Not an owner");
         }
-        if (fileInfoRepository.existsByUserIdAndFileName(userId, newFileName)) {
-            throw new IllegalArgumentException("Filename already exists for user");
+        log.debug("Renaming file: {}", fileId);
+        Update rename = Update.update("fileName", newFileName);
+        try {
+            updateLiveFile(fileId, userId, rename);
+        } catch (DuplicateKeyException e) {
+            if (!fileDeletionWorker.purgeTombstones(userId, List.of(newFileName), List.of())) {
+                throw new IllegalArgumentException("Filename already exists for user", e);
+            }
+            try {
+                updateLiveFile(fileId, userId, rename);
+            } catch (DuplicateKeyException retryError) {
+                throw new IllegalArgumentException("Filename already exists for user", retryError);
+            }
         }
+        fileDescriptorCache.invalidate(fileId);
         fileInfo.setFileName(newFileName);
-        log.debug("Renaming file info: {}", fileInfo);
-        fileInfoRepository.save(fileInfo);
-        log.debug("Saved file info in Mongo: {}", fileInfo);
         return fileInfo;
     }
 
@@ -136,7 +465,7 @@ public class MongoUploadService implements UploadService {
             return fileInfoRepository.findByVisibilityAndTagsInIgnoreCase(Visibility.PUBLIC.name(), Set.of(tag.toLowerCase()), pageRequest);
         } else {
             log.debug("finding all public files");
-            return fileInfoRepository.findByVisibility(Visibility.PUBLIC.name(), pageRequest);
+            return fileInfoRepository.findByVisibilityAndDeletedAtIsNull(Visibility.PUBLIC.name(), pageRequest);
         }
     }
 
@@ -146,67 +475,412 @@ public class MongoUploadService implements UploadService {
             return fileInfoRepository.findByUserIdAndTagsInIgnoreCase(userId, Set.of(tag.toLowerCase()), pageRequest);
         } else {
             log.debug("finding all private files for userId: {}", userId);
-            return fileInfoRepository.findByUserId(userId, pageRequest);
+            return fileInfoRepository.findByUserIdAndDeletedAtIsNull(userId, pageRequest);
         }
     }
 
+    /**
+     * Keyset pagination: instead of skipping {@code page * size} documents the query continues right after the
+     * last returned file, ordered by the sort key and {@code fileId} as a tie-breaker.
+     */
+    @Override
+    public CursorPage<FileInfo> listFiles(FileListRequest request) {
+        int maxPageSize = uploadConfiguration.getMaxPageSize();
+        if (request.getSize() < 1 || request.getSize() > maxPageSize) {
+            throw new IllegalArgumentException("Size should be between 1 and " + maxPageSize);
+        }
+        MongoPersistentEntity<?> entity = mongoTemplate.getConverter().getMappingContext().getRequiredPersistentEntity(FileInfo.class);
+        MongoPersistentProperty sortProperty = entity.getPersistentProperty(request.getSortBy());
+        if (sortProperty == null) {
+            throw new IllegalArgumentException("Unknown sort field: " + request.getSortBy());
+        }
+        boolean ascending = request.getSortDirection().isAscending();
+        String sortField = sortProperty.getFieldName();
+        Criteria filter = listCriteria(request.getUserId(), Visibility.parseString(request.getVisibility()), request.getTag());
+
+        Query query = Query.query(filter);
+        if (StringUtils.hasText(request.getCursor())) {
+            FileListCursor cursor = FileListCursor.decode(request.getCursor());
+            if (!request.getSortBy().equals(cursor.sortBy())) {
+                throw new IllegalArgumentException("Cursor was created for a different sort field");
+            }
+            query.addCriteria(keysetCriteria(sortField, cursor, ascending));
+        }
+        Sort sort = Sort.by(request.getSortDirection(), sortField);
+        if (!"_id".equals(sortField)) {
+            sort = sort.and(Sort.by(request.getSortDirection(), "_id"));
+        }
+        query.with(sort).limit(request.getSize() + 1);
+        log.debug("finding files with keyset query: {}", query);
+        List<FileInfo> files = mongoTemplate.find(query, FileInfo.class);
+
+        String nextCursor = null;
+        if (files.size() > request.getSize()) {
+            files = files.subList(0, request.getSize());
+            FileInfo last = files.get(files.size() - 1);
+            Object sortValue = mongoTemplate.getConverter().convertToMongoType(entity.getPropertyAccessor(last).getProperty(sortProperty));
+            nextCursor = new FileListCursor(request.getSortBy(), sortValue, last.getFileId()).encode();
+        }
+        Long total = request.isWithCount() ? mongoTemplate.count(Query.query(filter), FileInfo.class) : null;
+        return new CursorPage<>(files, request.getSize(), nextCursor, total);
+    }
+
+    private Criteria listCriteria(String userId, Visibility visibility, String tag) {
+        Criteria criteria;
+        if (visibility == Visibility.PUBLIC) {
+            criteria = Criteria.where("visibility").is(Visibility.PUBLIC.name());
+            if (StringUtils.hasText(tag)) {
+                criteria = criteria.and("tags").in(tag.toLowerCase());
+            }
+        } else {
+            criteria = Criteria.where("userId").is(userId);
+            if (tag != null) {
+                criteria = criteria.and("tags").in(tag.toLowerCase());
+            }
+        }
+        return criteria.and("deletedAt").is(null);
+    }
+
+    private Criteria keysetCriteria(String sortField, FileListCursor cursor, boolean ascending) {
+        if ("_id".equals(sortField)) {
+            return ascending ? Criteria.where("_id").gt(cursor.fileId()) : Criteria.where("_id").lt(cursor.fileId());
+        }
+        Criteria afterValue = ascending ? Criteria.where(sortField).gt(cursor.sortValue()) : Criteria.where(sortField).lt(cursor.sortValue());
+        Criteria afterId = ascending ? Criteria.where("_id").gt(cursor.fileId()) : Criteria.where("_id").lt(cursor.fileId());
+        return new Criteria().orOperator(afterValue, new Criteria().andOperator(Criteria.where(sortField).is(cursor.sortValue()), afterId));
+    }
+
+    /**
+     * Logical delete: the file is tombstoned, which hides it from listings and downloads at once. Releasing the
+     * content and removing the document are left to {@link FileDeletionWorker}.
+     */
     @Override
     public void deleteFile(String fileId, String userId) {
-        FileInfo fileInfo = fileInfoRepository.findById(fileId).orElseThrow();
+        FileInfo fileInfo = findLiveFile(fileId);
         if (!fileInfo.getUserId().equals(userId)) {
             throw new AuthException("Not an owner");
         }
-        log.debug("Deleting file info: {}", fileInfo);
-        fileInfoRepository.deleteById(fileId);
-        log.debug("Deleted file info in Mongo: {}", fileInfo);
-        gridFsTemplate.delete(Query.query(Criteria.where("_id").is(new ObjectId(fileInfo.getGridFsId()))));
-        log.debug("Deleted file from GridFS: {}", fileInfo);
+        log.debug("Deleting file: {}", fileId);
+        UpdateResult result = mongoTemplate.updateFirst(
+                Query.query(Criteria.where("_id").is(fileId).and("deletedAt").is(null)),
+                Update.update("deletedAt", LocalDateTime.now()),
+                FileInfo.class);
+        if (result.getModifiedCount() == 0) {
+            throw new NoSuchElementException("No value present");
+        }
+        fileDescriptorCache.invalidate(fileId);
+        tagCountStore.decrement(userId, fileInfo.getTags());
+    }
+
+    /**
+     * Tombstones all selected files with one update, see {@link #deleteFile}.
+     */
+    @Override
+    public BulkUpdateResult deleteFiles(FileBulkRequest request) {
+        String operationId = UUID.randomUUID().toString();
+        Document tagDelta = tagDelta(operationId, List.of(), new Document("$ifNull", List.of("$tags", List.of())));
+        UpdateResult result = mongoTemplate.updateMulti(Query.query(bulkFilter(request)),
+                AggregationUpdate.update()
+                        // a Date is what a LocalDateTime is stored as
+                        .set("deletedAt").toValue(new Date())
+                        .set(TAG_DELTAS).toValue(appendTagDelta(tagDelta)),
+                FileInfo.class);
+        invalidateCached(request);
+        if (result.getModifiedCount() > 0) {
+            tagCountStore.add(request.getUserId(), tagDeltas(request.getUserId(), operationId));
+            pullTagDeltas(request.getUserId(), operationId);
+        }
+        log.debug("Bulk deleted {} of {} files of user {}", result.getModifiedCount(), result.getMatchedCount(), request.getUserId());
+        return new BulkUpdateResult(result.getMatchedCount(), result.getModifiedCount());
+    }
+
+    @Override
+    public BulkUpdateResult changeVisibility(FileBulkRequest request) {
+        if (request.getVisibility() == null) {
+            throw new IllegalArgumentException("Visibility should be specified");
+        }
+        UpdateResult result = mongoTemplate.updateMulti(Query.query(bulkFilter(request)),
+                Update.update("visibility", request.getVisibility()), FileInfo.class);
+        invalidateCached(request);
+        return new BulkUpdateResult(result.getMatchedCount(), result.getModifiedCount());
+    }
+
+    /**
+     * Adds and removes tags with one pipeline update. Files that would end up with more than {@value #MAX_TAGS} tags
+     * are not matched and stay unchanged.
+     */
+    @Override
+    public BulkUpdateResult updateTags(FileBulkRequest request) {
+        Set<String> addTags = normalizeTags(request.getAddTags());
+        Set<String> removeTags = normalizeTags(request.getRemoveTags());
+        if (addTags.isEmpty() && removeTags.isEmpty()) {
+            throw new IllegalArgumentException("Tags to add or remove should be specified");
+        }
+        Document newTags = new Document("$setDifference", List.of(
+                new Document("$setUnion", List.of(new Document("$ifNull", List.of("$tags", List.of())), List.copyOf(addTags))),
+                List.copyOf(removeTags)));
+        Document filter = Query.query(bulkFilter(request)).getQueryObject()
+                .append("$expr", new Document("$lte", List.of(new Document("$size", newTags), MAX_TAGS)));
+        String operationId = UUID.randomUUID().toString();
+        Document currentTags = new Document("$ifNull", List.of("$tags", List.of()));
+        Document tagDelta = tagDelta(operationId,
+                new Document("$setDifference", List.of(newTags, currentTags)),
+                new Document("$setDifference", List.of(currentTags, newTags)));
+        // the delta is recorded in a stage of its own, before the tags change
+        UpdateResult result = mongoTemplate.updateMulti(new BasicQuery(filter),
+                AggregationUpdate.update()
+                        .set(TAG_DELTAS).toValue(appendTagDelta(tagDelta))
+                        .set("tags").toValue((AggregationExpression) context -> newTags),
+                FileInfo.class);
+        invalidateCached(request);
+        if (result.getModifiedCount() > 0) {
+            tagCountStore.add(request.getUserId(), tagDeltas(request.getUserId(), operationId));
+            pullTagDeltas(request.getUserId(), operationId);
+        }
+        return new BulkUpdateResult(result.getMatchedCount(), result.getModifiedCount());
+    }
+
+    /**
+     * Entry a bulk update appends to {@value #TAG_DELTAS} of every file it changes, holding the tags it added and
+     * removed there. A document is updated atomically, so concurrent bulk updates of the same file each record the
+     * change they made, and the tag counts follow them exactly without recounting the user's files. The entries are
+     * found through the sparse {@code tagDeltas.op} index and pulled once counted; {@code at} lets a rebuild strip the
+     * ones a crash left behind (see {@link MongoTagCountStore#rebuild(String)}).
+     */
+    private static Document tagDelta(String operationId, Object added, Object removed) {
+        return new Document("op", operationId).append("added", added).append("removed", removed).append("at", "$$NOW");
+    }
+
+    private void pullTagDeltas(String userId, String operationId) {
+        mongoTemplate.updateMulti(Query.query(Criteria.where("userId").is(userId).and(TAG_DELTAS + ".op").is(operationId)),
+                new Update().pull(TAG_DELTAS, new Document("op", operationId)), FileInfo.class);
+    }
+
+    private static AggregationExpression appendTagDelta(Document tagDelta) {
+        return context -> new Document("$concatArrays", List.of(
+                new Document("$ifNull", List.of("$" + TAG_DELTAS, List.of())), List.of(tagDelta)));
+    }
+
+    /**
+     * Sums the entries of one bulk update per tag.
+     */
+    private Map<String, Long> tagDeltas(String userId, String operationId) {
+        Criteria operation = Criteria.where(TAG_DELTAS + ".op").is(operationId);
+        Aggregation aggregation = Aggregation.newAggregation(List.<AggregationOperation>of(
+                Aggregation.match(Criteria.where("userId").is(userId).andOperator(operation)),
+                context -> new Document("$unwind", "$" + TAG_DELTAS),
+                Aggregation.match(operation),
+                context -> new Document("$project", new Document("changes", new Document("$concatArrays", List.of(
+                        tagChanges("$" + TAG_DELTAS + ".added", 1), tagChanges("$" + TAG_DELTAS + ".removed", -1))))),
+                context -> new Document("$unwind", "$changes"),
+                context -> new Document("$group", new Document("_id", "$changes.tag")
+                        .append("delta", new Document("$sum", "$changes.delta")))));
+        Map<String, Long> deltas = new HashMap<>();
+        for (Document tag : mongoTemplate.aggregate(aggregation, FileInfo.class, Document.class)) {
+            deltas.put(tag.getString("_id"), ((Number) tag.get("delta")).longValue());
+        }
+        return deltas;
+    }
+
+    private static Document tagChanges(String tags, int delta) {
+        return new Document("$map", new Document("input", tags).append("as", "tag")
+                .append("in", new Document("tag", "$$tag").append("delta", delta)));
+    }
+
+    /**
+     * Ownership is part of the filter, files of other users are never selected.
+     */
+    private Criteria bulkFilter(FileBulkRequest request) {
+        if (!StringUtils.hasText(request.getUserId())) {
+            throw new IllegalArgumentException("User should be specified");
+        }
+        boolean byIds = request.getFileIds() != null && !request.getFileIds().isEmpty();
+        boolean byTag = StringUtils.hasText(request.getTag());
+        if (byIds == byTag) {
+            throw new IllegalArgumentException("Either fileIds or tag should be specified");
+        }
+        Criteria criteria = Criteria.where("userId").is(request.getUserId()).and("deletedAt").is(null);
+        return byIds ? criteria.and("_id").in(request.getFileIds()) : criteria.and("tags").is(request.getTag().toLowerCase());
+    }
+
+    private void invalidateCached(FileBulkRequest request) {
+        if (request.getFileIds() != null && !request.getFileIds().isEmpty()) {
+            request.getFileIds().forEach(fileDescriptorCache::invalidate);
+        } else {
+            fileDescriptorCache.invalidateAll();
+        }
     }
 
     @Override
     public ResponseEntity<?> downloadFile(String fileId) {
-        FileInfo fileInfo = fileInfoRepository.findById(fileId).orElseThrow();
-        log.debug("Downloading file info: {}", fileInfo);
-        GridFSFile gridFSFile = gridFsTemplate.findOne(Query.query(Criteria.where("_id").is(new ObjectId(fileInfo.getGridFsId()))));
-        log.debug("Found GridFS file: {}", gridFSFile);
-        GridFsResource resource = gridFsTemplate.getResource(gridFSFile);
+        return downloadFile(fileId, HttpHeaders.EMPTY);
+    }
+
+    /**
+     * Compressed content is sent as stored with its {@code Content-Encoding} when the client accepts the codec and
+     * asks for the whole file, and decoded while streaming otherwise. Small public files are served from the
+     * {@link ContentCache}.
+     */
+    @Override
+    public ResponseEntity<?> downloadFile(String fileId, HttpHeaders requestHeaders) {
+        FileDescriptor descriptor = fileDescriptorCache.get(fileId, this::loadFileDescriptor);
+        FileInfo fileInfo = descriptor.fileInfo();
+        StoredObject storedObject = descriptor.storedObject();
+        String cacheControl = uploadConfiguration.getCacheControl().get(fileInfo.getVisibility());
+        if (ConditionalDownloads.isNotModified(requestHeaders, fileInfo)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .headers(headers -> ConditionalDownloads.validatorHeaders(headers, fileInfo, cacheControl))
+                    .build();
+        }
+        ContentCache.CachedContent cached;
+        try {
+            cached = contentCache.get(fileInfo, storedObject, () -> contentStorage.open(storedObject));
+        } catch (IOException e) {
+            return ResponseEntity.internalServerError().body("Failed to read file");
+        }
+        ContentCodec codec = cached != null ? cached.codec() : storedObject.codec().orElse(null);
+        Resource stored = cached != null ? cached.resource() : contentStorage.open(storedObject);
+        boolean rangeRequest = requestHeaders.containsKey(HttpHeaders.RANGE) && ConditionalDownloads.rangeApplies(requestHeaders, fileInfo);
+        if (codec != null && !rangeRequest && codec.isAcceptedBy(requestHeaders)) {
+            try {
+                return ResponseEntity.ok()
+                        .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileInfo.getFileName() + "\"")
+                        .header(HttpHeaders.CONTENT_ENCODING, codec.getContentEncoding())
+                        .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                        .headers(headers -> ConditionalDownloads.validatorHeaders(headers, fileInfo, cacheControl, codec))
+                        .contentType(MediaType.parseMediaType(fileInfo.getContentType()))
+                        .contentLength(cached != null ? cached.content().remaining() : storedObject.length())
+                        .body(new InputStreamResource(uploadMetrics.meteredDownload(stored.getInputStream())));
+            } catch (IOException e) {
+                return ResponseEntity.internalServerError().body("Failed to read file");
+            }
+        }
+        Resource resource = decoded(stored, codec, fileInfo);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileInfo.getFileName() + "\"")
+                .headers(headers -> ConditionalDownloads.validatorHeaders(headers, fileInfo, cacheControl))
+                .contentType(MediaType.parseMediaType(fileInfo.getContentType()));
+        if (codec != null) {
+            response.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+        if (rangeRequest) {
+            // Spring MVC turns a seekable resource into 206 / 416 responses on its own, one region per range
+            return response.body(new MeteredResource(resource, uploadMetrics));
+        }
         try {
-            return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileInfo.getFileName() + "\"")
-                    .contentType(MediaType.parseMediaType(fileInfo.getContentType()))
-                    .body(new InputStreamResource(resource.getInputStream()));
+            return response
+                    .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                    .contentLength(fileInfo.getFileSize())
+                    .body(new InputStreamResource(uploadMetrics.meteredDownload(resource.getInputStream())));
         } catch (IOException e) {
             return ResponseEntity.internalServerError().body("Failed to read file");
         }
     }
 
+    /**
+     * The file content, decoded on the fly when it is stored compressed.
+     */
+    private Resource openContent(StoredObject storedObject, FileInfo fileInfo) {
+        return decoded(contentStorage.open(storedObject), storedObject.codec().orElse(null), fileInfo);
+    }
+
+    private static Resource decoded(Resource stored, ContentCodec codec, FileInfo fileInfo) {
+        return codec == null ? stored : new DecodedResource(stored, codec, fileInfo.getFileSize());
+    }
+
+    /**
+     * Streams the selected files from a cursor sorted by name straight into the archive. The selection is counted
+     * first, so an oversized request fails before anything is written.
+     */
+    @Override
+    public void writeArchive(FileArchiveRequest request, OutputStream outputStream) throws IOException {
+        Query query = archiveQuery(request);
+        int maxFiles = uploadConfiguration.getArchive().getMaxFiles();
+        if (mongoTemplate.count(Query.of(query).limit(maxFiles + 1), FileInfo.class) > maxFiles) {
+            throw new IllegalArgumentException("Max " + maxFiles + " files per archive");
+        }
+        query.with(Sort.by("fileName", "_id"));
+        try (Stream<FileInfo> files = mongoTemplate.stream(query, FileInfo.class)) {
+            long written = FileArchives.write(request.getFormat(), outputStream, files.iterator(), this::openContent);
+            log.debug("Wrote {} archive of {} files", request.getFormat(), written);
+        }
+    }
+
+    private Query archiveQuery(FileArchiveRequest request) {
+        if (request.getFileIds() != null && !request.getFileIds().isEmpty()) {
+            Criteria readable = StringUtils.hasText(request.getUserId())
+                    ? new Criteria().orOperator(Criteria.where("visibility").is(Visibility.PUBLIC.name()),
+                    Criteria.where("userId").is(request.getUserId()))
+                    : Criteria.where("visibility").is(Visibility.PUBLIC.name());
+            return Query.query(new Criteria().andOperator(Criteria.where("_id").in(request.getFileIds()),
+                    Criteria.where("deletedAt").is(null), readable));
+        }
+        Visibility visibility = Visibility.parseString(request.getVisibility());
+        if (visibility == Visibility.PRIVATE && !StringUtils.hasText(request.getUserId())) {
+            throw new IllegalArgumentException("User should be specified");
+        }
+        return Query.query(listCriteria(request.getUserId(), visibility, request.getTag()));
+    }
+
+    private InputStream openContent(FileInfo fileInfo) throws IOException {
+        StoredObject storedObject = contentStorage.stat(fileInfo.getStorageKey())
+                .orElseThrow(() -> new NoSuchElementException("No stored content for file " + fileInfo.getFileId()));
+        return uploadMetrics.meteredDownload(openContent(storedObject, fileInfo).getInputStream());
+    }
+
+    private FileDescriptor loadFileDescriptor(String fileId) {
+        FileInfo fileInfo = findLiveFile(fileId);
+        StoredObject storedObject = contentStorage.stat(fileInfo.getStorageKey())
+                .orElseThrow(() -> new NoSuchElementException("No stored content for file " + fileId));
+        return new FileDescriptor(fileInfo, storedObject);
+    }
+
     @Override
     public FileInfo changeVisibility(String fileId, String userId, Visibility visibility) {
-        FileInfo fileInfo = fileInfoRepository.findById(fileId).orElseThrow();
-        log.debug("Changing visibility for file info: {}", fileInfo);
+        FileInfo fileInfo = findLiveFile(fileId);
         if (!fileInfo.getUserId().equals(userId)) {
             throw new AuthException("Not an owner");
         }
+        log.debug("Changing visibility of file: {} to {}", fileId, visibility);
+        updateLiveFile(fileId, userId, Update.update("visibility", visibility));
+        fileDescriptorCache.invalidate(fileId);
         fileInfo.setVisibility(visibility);
-        log.debug("Changed visibility for file info: {}", fileInfo);
-        fileInfoRepository.save(fileInfo);
-        log.debug("Saved file info in Mongo: {}", fileInfo);
         return fileInfo;
     }
 
+    /**
+     * Sets single fields instead of saving the whole document, which would undo a delete or a bulk operation that
+     * lands in between.
+     *
+     * @throws NoSuchElementException when the file was deleted meanwhile
+     */
+    private void updateLiveFile(String fileId, String userId, Update update) {
+        Query query = Query.query(Criteria.where("_id").is(fileId).and("userId").is(userId).and("deletedAt").is(null));
+        if (mongoTemplate.updateFirst(query, update, FileInfo.class).getMatchedCount() == 0) {
+            throw new NoSuchElementException("No file " + fileId);
+        }
+    }
+
+    /**
+     * Deleted files count as missing from the moment they are tombstoned.
+     */
+    private FileInfo findLiveFile(String fileId) {
+        return fileInfoRepository.findById(fileId).filter(fileInfo -> fileInfo.getDeletedAt() == null).orElseThrow();
+    }
+
     @Override
     public Set<String> listTags(String userId) {
+        return new HashSet<>(listTagCounts(userId).keySet());
+    }
+
+    /**
+     * Reads the counts maintained on upload and delete instead of scanning the user's files.
+     */
+    @Override
+    public Map<String, Long> listTagCounts(String userId) {
         if (!StringUtils.hasText(userId)) {
             throw new IllegalArgumentException("User should be specified");
         }
-        return new HashSet<>(findDistinctTagsByUserId(userId));
-    }
-
-    private List<String> findDistinctTagsByUserId(String userId) {
-        return mongoTemplate.query(FileInfo.class)
-                .distinct("tags")
-                .matching(Criteria.where("userId").is(userId))
-                .as(String.class)
-                .all();
+        return tagCountStore.counts(userId);
     }
 }
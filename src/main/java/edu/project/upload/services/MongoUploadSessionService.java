@@ -0,0 +1,340 @@
+package edu.project.upload.services;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoWriteException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Sorts;
+import edu.project.upload.configuration.UploadConfiguration;
+import edu.project.upload.model.FileInfo;
+import edu.project.upload.model.UploadSession;
+import edu.project.upload.model.UploadSessionState;
+import edu.project.upload.model.Visibility;
+import edu.project.upload.repositories.UploadSessionRepository;
+import edu.project.upload.requests.UploadSessionCreateRequest;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class MongoUploadSessionService implements UploadSessionService {
+    private static final String GRID_FS_FILES_COLLECTION = "fs.files";
+    private static final String GRID_FS_CHUNKS_COLLECTION = "fs.chunks";
+
+    private final UploadSessionRepository uploadSessionRepository;
+    private final MongoUploadService mongoUploadService;
+    private final HashCalculator hashCalculator;
+    private final MongoTemplate mongoTemplate;
+    private final UploadConfiguration uploadConfiguration;
+    private final BlobStore blobStore;
+    private final ContentStorage contentStorage;
+    /**
+     * Digest over the contiguous prefix of chunks seen by this node. It is only an optimisation:
+     * commit finishes (or redoes) the hash from the stored chunks.
+     */
+    private final Map<String, SessionDigest> digests = new ConcurrentHashMap<>();
+
+    @Override
+    public UploadSession createSession(UploadSessionCreateRequest request) {
+        if (!StringUtils.hasText(request.getUserId()) || !StringUtils.hasText(request.getFileName())) {
+            throw new IllegalArgumentException("User and file name should be specified");
+        }
+        if (request.getFileSize() < 0) {
+            throw new IllegalArgumentException("File size should not be negative");
+        }
+        Set<String> normalizedTags = MongoUploadService.normalizeTags(request.getTags());
+        mongoUploadService.validateFileName(request.getUserId(), request.getFileName());
+        int chunkSize = uploadConfiguration.getSession().getChunkSize();
+        long totalChunks = (request.getFileSize() + chunkSize - 1) / chunkSize;
+        if (totalChunks > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("File is too large");
+        }
+        LocalDateTime now = LocalDateTime.now();
+        UploadSession session = UploadSession.builder()
+                .sessionId(UUID.randomUUID().toString())
+                .userId(request.getUserId())
+                .fileName(request.getFileName())
+                .tags(normalizedTags)
+                .visibility(request.getVisibility() != null ? request.getVisibility() : Visibility.defaultValue())
+                .contentType(request.getContentType())
+                .fileSize(request.getFileSize())
+                .chunkSize(chunkSize)
+                .totalChunks((int) totalChunks)
+                .gridFsId(new ObjectId().toHexString())
+                .receivedChunks(new HashSet<>())
+                .state(UploadSessionState.OPEN)
+                .createdDate(now)
+                .expiresAt(now.plus(uploadConfiguration.getSession().getTtl()))
+                .build();
+        log.debug("Creating upload session: {}", session.getSessionId());
+        return uploadSessionRepository.save(session);
+    }
+
+    @Override
+    public UploadSession uploadChunk(String sessionId, String userId, int chunkNumber, byte[] data) {
+        UploadSession session = getOpenSession(sessionId, userId);
+        if (chunkNumber < 0 || chunkNumber >= session.getTotalChunks()) {
+            throw new IllegalArgumentException("Chunk number should be between 0 and " + (session.getTotalChunks() - 1));
+        }
+        long expectedSize = Math.min(session.getChunkSize(), session.getFileSize() - (long) chunkNumber * session.getChunkSize());
+        if (data.length != expectedSize) {
+            throw new IllegalArgumentException("Chunk " + chunkNumber + " should be " + expectedSize + " bytes");
+        }
+        if (session.getReceivedChunks().contains(chunkNumber)) {
+            log.debug("Chunk {} of session {} is already stored", chunkNumber, sessionId);
+            return session;
+        }
+        boolean inserted = insertChunk(new ObjectId(session.getGridFsId()), chunkNumber, data);
+        UploadSession updated = mongoTemplate.findAndModify(
+                openSessionQuery(sessionId),
+                new Update()
+                        .addToSet("receivedChunks", chunkNumber)
+                        .set("expiresAt", LocalDateTime.now().plus(uploadConfiguration.getSession().getTtl())),
+                FindAndModifyOptions.options().returnNew(true),
+                UploadSession.class);
+        if (updated == null) {
+            throw new IllegalStateException("Upload session is no longer open");
+        }
+        log.debug("Stored chunk {} of session {}", chunkNumber, sessionId);
+        updateDigest(updated, chunkNumber, inserted ? data : null);
+        return updated;
+    }
+
+    /**
+     * Chunks are never overwritten: of concurrent PUTs of one chunk only the insert that wins the unique
+     * {@code (files_id, n)} index stores its bytes, so the hash, which only sees stored bytes, always describes them.
+     *
+     * @return whether these bytes were stored, {@code false} when the chunk was stored already
+     */
+    private boolean insertChunk(ObjectId gridFsId, int chunkNumber, byte[] data) {
+        try {
+            chunks().insertOne(new Document("files_id", gridFsId).append("n", chunkNumber).append("data", new Binary(data)));
+            return true;
+        } catch (MongoWriteException e) {
+            if (e.getError().getCategory() != ErrorCategory.DUPLICATE_KEY) {
+                throw e;
+            }
+            log.debug("Chunk {} of GridFS file {} is already stored", chunkNumber, gridFsId);
+            return false;
+        }
+    }
+
+    @Override
+    public UploadSession getSession(String sessionId, String userId) {
+        UploadSession session = uploadSessionRepository.findById(sessionId).orElseThrow();
+        if (!session.getUserId().equals(userId)) {
+            throw new AuthException("Not an owner");
+        }
+        return session;
+    }
+
+    @Override
+    public FileInfo commitSession(String sessionId, String userId) {
+        UploadSession session = getOpenSession(sessionId, userId);
+        if (session.getReceivedChunks().size() < session.getTotalChunks()) {
+            throw new IllegalArgumentException("Upload is incomplete: " + session.getReceivedChunks().size()
+                    + " of " + session.getTotalChunks() + " chunks stored");
+        }
+        UploadSession committing = mongoTemplate.findAndModify(
+                openSessionQuery(sessionId),
+                new Update()
+                        .set("state", UploadSessionState.COMMITTING)
+                        .set("expiresAt", LocalDateTime.now().plus(uploadConfiguration.getSession().getTtl())),
+                FindAndModifyOptions.options().returnNew(true),
+                UploadSession.class);
+        if (committing == null) {
+            throw new IllegalStateException("Upload session is already being committed");
+        }
+        String hash = finishDigest(committing);
+        String storageKey = blobStore.register(hash, storeContent(committing), committing.getFileSize());
+        FileInfo fileInfo;
+        try {
+            fileInfo = mongoUploadService.saveFileInfo(committing.getUserId(), committing.getFileName(), committing.getVisibility(),
+                    committing.getTags(), committing.getContentType(), committing.getFileSize(), hash, storageKey);
+        } catch (RuntimeException e) {
+            // the content now belongs to the blob, so the session cannot be reopened
+            blobStore.release(hash, storageKey);
+            uploadSessionRepository.deleteById(sessionId);
+            throw e;
+        }
+        uploadSessionRepository.deleteById(sessionId);
+        log.debug("Committed upload session {} as file {}", sessionId, fileInfo.getFileId());
+        return fileInfo;
+    }
+
+    @Override
+    public void abortSession(String sessionId, String userId) {
+        UploadSession session = getOpenSession(sessionId, userId);
+        discard(session);
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "#{@uploadConfiguration.session.cleanupInterval.toMillis()}")
+    public void cleanupExpiredSessions() {
+        List<UploadSession> expired;
+        do {
+            expired = uploadSessionRepository.findTop100ByExpiresAtBefore(LocalDateTime.now());
+            for (UploadSession session : expired) {
+                boolean committed = session.getState() == UploadSessionState.COMMITTING
+                        && files().countDocuments(Filters.eq("_id", new ObjectId(session.getGridFsId()))) > 0;
+                if (committed) {
+                    // the commit got as far as the files document, so the chunks belong to a file now
+                    uploadSessionRepository.deleteById(session.getSessionId());
+                } else {
+                    log.debug("Discarding expired upload session: {}", session.getSessionId());
+                    discard(session);
+                }
+            }
+        } while (!expired.isEmpty());
+        long staleBefore = System.nanoTime() - uploadConfiguration.getSession().getTtl().toNanos();
+        digests.values().removeIf(digest -> digest.lastAccess - staleBefore < 0);
+    }
+
+    private UploadSession getOpenSession(String sessionId, String userId) {
+        UploadSession session = getSession(sessionId, userId);
+        if (session.getState() != UploadSessionState.OPEN) {
+            throw new IllegalStateException("Upload session is being committed");
+        }
+        return session;
+    }
+
+    private Query openSessionQuery(String sessionId) {
+        return Query.query(Criteria.where("_id").is(sessionId).and("state").is(UploadSessionState.OPEN));
+    }
+
+    /**
+     * @param data the bytes of the chunk when this request stored them, {@code null} when another request did
+     */
+    private void updateDigest(UploadSession session, int chunkNumber, byte[] data) {
+        SessionDigest digest = digests.computeIfAbsent(session.getSessionId(), id -> new SessionDigest(hashCalculator.newDigest()));
+        synchronized (digest) {
+            digest.lastAccess = System.nanoTime();
+            if (data != null && digest.nextChunk == chunkNumber) {
+                digest.messageDigest.update(data);
+                digest.nextChunk++;
+            }
+            if (session.getReceivedChunks().contains(digest.nextChunk)) {
+                catchUp(digest, session);
+            }
+        }
+    }
+
+    private String finishDigest(UploadSession session) {
+        SessionDigest digest = digests.remove(session.getSessionId());
+        if (digest == null) {
+            digest = new SessionDigest(hashCalculator.newDigest());
+        }
+        synchronized (digest) {
+            catchUp(digest, session);
+            if (digest.nextChunk != session.getTotalChunks()) {
+                throw new IllegalStateException("Chunk " + digest.nextChunk + " of session " + session.getSessionId() + " is missing");
+            }
+            return hashCalculator.getHash(digest.messageDigest);
+        }
+    }
+
+    /**
+     * Feeds the stored chunks that directly follow the digested prefix into the digest.
+     */
+    private void catchUp(SessionDigest digest, UploadSession session) {
+        if (digest.nextChunk >= session.getTotalChunks()) {
+            return;
+        }
+        ObjectId gridFsId = new ObjectId(session.getGridFsId());
+        try (MongoCursor<Document> cursor = chunks()
+                .find(Filters.and(Filters.eq("files_id", gridFsId), Filters.gte("n", digest.nextChunk)))
+                .sort(Sorts.ascending("n"))
+                .iterator()) {
+            while (cursor.hasNext() && digest.nextChunk < session.getTotalChunks()) {
+                Document chunk = cursor.next();
+                if (chunk.getInteger("n") != digest.nextChunk) {
+                    break;
+                }
+                digest.messageDigest.update(chunk.get("data", Binary.class).getData());
+                digest.nextChunk++;
+            }
+        }
+    }
+
+    /**
+     * Turns the staged chunks into stored content. On GridFS they already are the content and only the files
+     * document is missing, any other backend gets a copy and the staged chunks are dropped.
+     */
+    private String storeContent(UploadSession session) {
+        ObjectId gridFsId = new ObjectId(session.getGridFsId());
+        if (contentStorage instanceof GridFsContentStorage) {
+            insertGridFsFile(session, gridFsId);
+            return session.getGridFsId();
+        }
+        String storageKey;
+        try (InputStream content = new GridFsChunkInputStream(chunks(), gridFsId, session.getChunkSize(), session.getFileSize())) {
+            storageKey = contentStorage.store(content, session.getFileName(), session.getContentType(), session.getFileSize());
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to store file", e);
+        }
+        chunks().deleteMany(Filters.eq("files_id", gridFsId));
+        return storageKey;
+    }
+
+    private void insertGridFsFile(UploadSession session, ObjectId gridFsId) {
+        Document metadata = new Document();
+        if (StringUtils.hasText(session.getContentType())) {
+            metadata.append("_contentType", session.getContentType());
+        }
+        files().insertOne(new Document("_id", gridFsId)
+                .append("length", session.getFileSize())
+                .append("chunkSize", session.getChunkSize())
+                .append("uploadDate", new Date())
+                .append("filename", session.getFileName())
+                .append("metadata", metadata));
+    }
+
+    private void discard(UploadSession session) {
+        digests.remove(session.getSessionId());
+        chunks().deleteMany(Filters.eq("files_id", new ObjectId(session.getGridFsId())));
+        uploadSessionRepository.deleteById(session.getSessionId());
+    }
+
+    private MongoCollection<Document> chunks() {
+        return mongoTemplate.getCollection(GRID_FS_CHUNKS_COLLECTION);
+    }
+
+    private MongoCollection<Document> files() {
+        return mongoTemplate.getCollection(GRID_FS_FILES_COLLECTION);
+    }
+
+    private static class SessionDigest {
+        private final MessageDigest messageDigest;
+        private int nextChunk;
+        private volatile long lastAccess = System.nanoTime();
+
+        private SessionDigest(MessageDigest messageDigest) {
+            this.messageDigest = messageDigest;
+        }
+    }
+}
@@ -0,0 +1,374 @@
+package edu.project.upload.services;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Accumulators;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+import edu.project.upload.configuration.UploadConfiguration;
+import edu.project.upload.model.ContentBlob;
+import edu.project.upload.model.FileInfo;
+import edu.project.upload.model.UploadSession;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Repairs drift between {@code files}, {@code blobs} and GridFS left behind by crashes between the steps of an upload
+ * or a delete. Every pass walks one collection in {@code _id} order, {@code upload.reconciler.batch-size} documents
+ * per query with a pause after each batch:
+ * <ul>
+ *     <li>GridFS files referenced by neither a blob nor a file are deleted,</li>
+ *     <li>chunks without a GridFS file or an upload session are deleted,</li>
+ *     <li>blobs no file points at any more are purged with their content once two passes in a row saw them
+ *     unreferenced with the same reference count, so a blob that is being linked by an upload right now survives,</li>
+ *     <li>files whose content is gone are reported, never deleted.</li>
+ * </ul>
+ * Only content older than the grace period is touched, which has to exceed the longest upload and is checked against
+ * the async request timeout at startup. The blob pass runs on every backend, the passes over GridFS
+ * collections only when the content is stored in GridFS.
+ */
+@Service
+@Slf4j
+public class OrphanReconciler {
+    private static final int LOGGED_IDS = 20;
+
+    private final MongoTemplate mongoTemplate;
+    private final ContentStorage contentStorage;
+    private final UploadConfiguration.Reconciler config;
+    private final MeterRegistry meterRegistry;
+    private final Counter reclaimedBytes;
+    private final Timer passTimer;
+    private final AtomicLong danglingFiles = new AtomicLong();
+    private Map<String, Long> suspectBlobs = new HashMap<>();
+
+    public OrphanReconciler(MongoTemplate mongoTemplate, ContentStorage contentStorage, UploadConfiguration uploadConfiguration,
+                            MeterRegistry meterRegistry, @Value("${spring.mvc.async.request-timeout:0s}") Duration requestTimeout) {
+        this.mongoTemplate = mongoTemplate;
+        this.contentStorage = contentStorage;
+        this.config = uploadConfiguration.getReconciler();
+        if (config.getGracePeriod().compareTo(requestTimeout) <= 0) {
+            throw new IllegalStateException("upload.reconciler.grace-period " + config.getGracePeriod()
+                    + " must exceed spring.mvc.async.request-timeout " + requestTimeout + ", the longest an upload may take");
+        }
+        this.meterRegistry = meterRegistry;
+        this.reclaimedBytes = Counter.builder("reconciler.reclaimed.bytes")
+                .description("Stored bytes freed by purging orphans")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.passTimer = Timer.builder("reconciler.pass")
+                .description("Full reconciliation passes over files, blobs and GridFS")
+                .register(meterRegistry);
+        Gauge.builder("reconciler.dangling.files", danglingFiles, AtomicLong::get)
+                .description("Files whose stored content was missing in the last pass")
+                .register(meterRegistry);
+    }
+
+    public record Report(long purgedContents, long purgedChunkFiles, long purgedBlobs, long danglingFiles, long reclaimedBytes) {
+    }
+
+    @Scheduled(initialDelayString = "#{@uploadConfiguration.reconciler.interval.toMillis()}",
+            fixedDelayString = "#{@uploadConfiguration.reconciler.interval.toMillis()}")
+    public void scheduledReconcile() {
+        if (!config.isEnabled()) {
+            return;
+        }
+        try {
+            Report report = reconcile();
+            log.info("Reconciliation finished: {}", report);
+        } catch (RuntimeException e) {
+            log.warn("Reconciliation failed", e);
+        }
+    }
+
+    /**
+     * Runs all passes once, on the calling thread.
+     */
+    public synchronized Report reconcile() {
+        long start = System.nanoTime();
+        Instant cutoff = Instant.now().minus(config.getGracePeriod());
+        AtomicLong reclaimed = new AtomicLong();
+        try {
+            long purgedBlobs = purgeLeakedBlobs(cutoff, reclaimed);
+            if (!(contentStorage instanceof GridFsContentStorage)) {
+                return new Report(0, 0, purgedBlobs, 0, reclaimed.get());
+            }
+            long purgedContents = purgeUnreferencedContent(cutoff, reclaimed);
+            long purgedChunkFiles = purgeOrphanChunks(cutoff, reclaimed);
+            long dangling = reportDanglingFiles();
+            danglingFiles.set(dangling);
+            return new Report(purgedContents, purgedChunkFiles, purgedBlobs, dangling, reclaimed.get());
+        } finally {
+            passTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Blobs whose storage key no file holds, from deletes that removed the file but never released the blob.
+     */
+    private long purgeLeakedBlobs(Instant cutoff, AtomicLong reclaimed) {
+        Map<String, Long> suspects = new HashMap<>();
+        AtomicLong purged = new AtomicLong();
+        walk(blobs(), Filters.lt("createdDate", Date.from(cutoff)), Projections.include("gridFsId", "refCount", "size"), batch -> {
+            Set<String> referenced = referencedKeys(files(), batch.stream().map(blob -> blob.getString("gridFsId")).toList());
+            for (Document blob : batch) {
+                if (referenced.contains(blob.getString("gridFsId"))) {
+                    continue;
+                }
+                String hash = blob.getString("_id");
+                long refCount = ((Number) blob.get("refCount")).longValue();
+                Long suspectedRefCount = suspectBlobs.get(hash);
+                if (suspectedRefCount == null || suspectedRefCount != refCount) {
+                    suspects.put(hash, refCount);
+                    continue;
+                }
+                log.warn("Blob {} has refCount {} but no files", hash, refCount);
+                if (config.isDryRun()) {
+                    suspects.put(hash, refCount);
+                    continue;
+                }
+                if (blobs().deleteOne(Filters.and(Filters.eq("_id", hash), Filters.eq("refCount", blob.get("refCount")))).getDeletedCount() > 0) {
+                    contentStorage.delete(blob.getString("gridFsId"));
+                    purged.incrementAndGet();
+                    reclaimed.addAndGet(((Number) blob.get("size")).longValue());
+                    reclaimedBytes.increment(((Number) blob.get("size")).doubleValue());
+                }
+            }
+        });
+        suspectBlobs = suspects;
+        purgedCounter("blob").increment(purged.get());
+        return purged.get();
+    }
+
+    /**
+     * GridFS files neither a blob nor a file points at, left by uploads that stored content but never saved it.
+     */
+    private long purgeUnreferencedContent(Instant cutoff, AtomicLong reclaimed) {
+        AtomicLong purged = new AtomicLong();
+        walk(gridFsFiles(), Filters.lt("uploadDate", Date.from(cutoff)), Projections.include("length"), batch -> {
+            List<String> keys = batch.stream()
+                    .filter(file -> file.get("_id") instanceof ObjectId)
+                    .map(file -> file.getObjectId("_id").toHexString())
+                    .toList();
+            Set<String> referenced = referencedKeys(blobs(), keys);
+            referenced.addAll(referencedKeys(files(), keys));
+            List<String> orphans = new ArrayList<>();
+            long bytes = 0;
+            for (Document file : batch) {
+                if (file.get("_id") instanceof ObjectId id && !referenced.contains(id.toHexString())) {
+                    orphans.add(id.toHexString());
+                    bytes += ((Number) file.get("length")).longValue();
+                }
+            }
+            if (orphans.isEmpty()) {
+                return;
+            }
+            log.warn("{} unreferenced GridFS files, first ones: {}", orphans.size(), orphans.subList(0, Math.min(LOGGED_IDS, orphans.size())));
+            if (!config.isDryRun()) {
+                contentStorage.deleteAll(orphans);
+                purged.addAndGet(orphans.size());
+                reclaimed.addAndGet(bytes);
+                reclaimedBytes.increment(bytes);
+            }
+        });
+        purgedCounter("content").increment(purged.get());
+        return purged.get();
+    }
+
+    /**
+     * Chunks whose GridFS file was never written, from failed uploads and upload sessions that disappeared without
+     * their cleanup. Chunk ids are ObjectIds created when the chunk was written, so the walk goes over the chunks
+     * older than the cutoff in {@code _id} order and groups each batch by file on the server, one round trip per
+     * {@code batch-size} chunks. The file document of an upload is only inserted after its last chunk, so a set is
+     * only an orphan when none of its chunks is younger than the cutoff either.
+     */
+    private long purgeOrphanChunks(Instant cutoff, AtomicLong reclaimed) {
+        ObjectId cutoffId = new ObjectId(Date.from(cutoff));
+        Counter scanned = scannedCounter(GridFsContentStorage.GRID_FS_CHUNKS_COLLECTION);
+        long purged = 0;
+        ObjectId last = null;
+        while (true) {
+            List<Document> groups = gridFsChunks().aggregate(List.of(
+                    Aggregates.match(last == null ? Filters.lt("_id", cutoffId) : Filters.and(Filters.gt("_id", last), Filters.lt("_id", cutoffId))),
+                    Aggregates.sort(Sorts.ascending("_id")),
+                    Aggregates.limit(config.getBatchSize()),
+                    Aggregates.group("$files_id", Accumulators.sum("chunks", 1), Accumulators.max("lastChunk", "$_id"))
+            )).into(new ArrayList<>());
+            if (groups.isEmpty()) {
+                return purged;
+            }
+            long chunks = groups.stream().mapToLong(group -> ((Number) group.get("chunks")).longValue()).sum();
+            scanned.increment(chunks);
+            purged += purgeOrphanChunks(groups.stream()
+                    .map(group -> group.get("_id"))
+                    .filter(ObjectId.class::isInstance)
+                    .map(ObjectId.class::cast)
+                    .toList(), cutoffId, reclaimed);
+            if (chunks < config.getBatchSize() || !pause()) {
+                return purged;
+            }
+            last = groups.stream().map(group -> group.getObjectId("lastChunk")).max(ObjectId::compareTo).orElseThrow();
+        }
+    }
+
+    private long purgeOrphanChunks(List<ObjectId> filesIds, ObjectId cutoffId, AtomicLong reclaimed) {
+        if (filesIds.isEmpty()) {
+            return 0;
+        }
+        Set<ObjectId> owned = new HashSet<>();
+        // still being written
+        gridFsChunks().distinct("files_id", Filters.and(Filters.in("files_id", filesIds), Filters.gte("_id", cutoffId)), ObjectId.class)
+                .forEach(owned::add);
+        gridFsFiles().find(Filters.in("_id", filesIds)).projection(Projections.include("_id"))
+                .forEach(file -> owned.add(file.getObjectId("_id")));
+        uploadSessions().find(Filters.in("gridFsId", filesIds.stream().map(ObjectId::toHexString).toList()))
+                .projection(Projections.include("gridFsId"))
+                .forEach(session -> owned.add(new ObjectId(session.getString("gridFsId"))));
+        List<ObjectId> orphans = filesIds.stream().filter(id -> !owned.contains(id)).toList();
+        if (orphans.isEmpty()) {
+            return 0;
+        }
+        log.warn("{} GridFS chunk sets without a file, first ones: {}", orphans.size(), orphans.subList(0, Math.min(LOGGED_IDS, orphans.size())));
+        if (config.isDryRun()) {
+            return 0;
+        }
+        Document size = gridFsChunks().aggregate(List.of(
+                Aggregates.match(Filters.in("files_id", orphans)),
+                Aggregates.group(null, Accumulators.sum("bytes", new Document("$binarySize", "$data"))))).first();
+        long bytes = size == null ? 0 : ((Number) size.get("bytes")).longValue();
+        gridFsChunks().deleteMany(Filters.in("files_id", orphans));
+        reclaimed.addAndGet(bytes);
+        reclaimedBytes.increment(bytes);
+        purgedCounter("chunks").increment(orphans.size());
+        return orphans.size();
+    }
+
+    /**
+     * Files whose storage key has no GridFS file, which downloads fail on. They are only reported: the metadata is
+     * all that is left of them and deciding about it is up to an operator.
+     */
+    private long reportDanglingFiles() {
+        AtomicLong dangling = new AtomicLong();
+        walk(files(), Filters.empty(), Projections.include("gridFsId"), batch -> {
+            List<ObjectId> ids = batch.stream()
+                    .map(file -> file.getString("gridFsId"))
+                    .filter(key -> key != null && ObjectId.isValid(key))
+                    .map(ObjectId::new)
+                    .toList();
+            Set<String> stored = new HashSet<>();
+            gridFsFiles().find(Filters.in("_id", ids)).projection(Projections.include("_id"))
+                    .forEach(file -> stored.add(file.getObjectId("_id").toHexString()));
+            List<Object> missing = batch.stream()
+                    .filter(file -> !stored.contains(file.getString("gridFsId")))
+                    .map(file -> file.get("_id"))
+                    .toList();
+            if (!missing.isEmpty()) {
+                dangling.addAndGet(missing.size());
+                log.warn("{} files without stored content, first ones: {}", missing.size(), missing.subList(0, Math.min(LOGGED_IDS, missing.size())));
+            }
+        });
+        return dangling.get();
+    }
+
+    /**
+     * Keyset walk over {@code _id}, one query per batch.
+     */
+    private void walk(MongoCollection<Document> collection, Bson filter, Bson projection, Consumer<List<Document>> handler) {
+        Counter scanned = scannedCounter(collection.getNamespace().getCollectionName());
+        Object lastId = null;
+        while (true) {
+            List<Document> batch = collection
+                    .find(lastId == null ? filter : Filters.and(filter, Filters.gt("_id", lastId)))
+                    .projection(projection)
+                    .sort(Sorts.ascending("_id"))
+                    .limit(config.getBatchSize())
+                    .into(new ArrayList<>());
+            scanned.increment(batch.size());
+            if (batch.isEmpty()) {
+                return;
+            }
+            handler.accept(batch);
+            if (batch.size() < config.getBatchSize() || !pause()) {
+                return;
+            }
+            lastId = batch.get(batch.size() - 1).get("_id");
+        }
+    }
+
+    private static Set<String> referencedKeys(MongoCollection<Document> collection, List<String> keys) {
+        Set<String> referenced = new HashSet<>();
+        collection.find(Filters.in("gridFsId", keys)).projection(Projections.include("gridFsId"))
+                .forEach(document -> referenced.add(document.getString("gridFsId")));
+        return referenced;
+    }
+
+    /**
+     * @return {@code false} when interrupted, which ends the pass
+     */
+    private boolean pause() {
+        try {
+            Thread.sleep(config.getBatchPause());
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private Counter scannedCounter(String collection) {
+        return Counter.builder("reconciler.scanned")
+                .description("Documents visited by the reconciler")
+                .tag("collection", collection)
+                .register(meterRegistry);
+    }
+
+    private Counter purgedCounter(String kind) {
+        return Counter.builder("reconciler.purged")
+                .description("Orphans purged by the reconciler")
+                .tag("kind", kind)
+                .register(meterRegistry);
+    }
+
+    private MongoCollection<Document> files() {
+        return mongoTemplate.getCollection(mongoTemplate.getCollectionName(FileInfo.class));
+    }
+
+    private MongoCollection<Document> blobs() {
+        return mongoTemplate.getCollection(mongoTemplate.getCollectionName(ContentBlob.class));
+    }
+
+    private MongoCollection<Document> uploadSessions() {
+        return mongoTemplate.getCollection(mongoTemplate.getCollectionName(UploadSession.class));
+    }
+
+    private MongoCollection<Document> gridFsFiles() {
+        return mongoTemplate.getCollection(GridFsContentStorage.GRID_FS_FILES_COLLECTION);
+    }
+
+    private MongoCollection<Document> gridFsChunks() {
+        return mongoTemplate.getCollection(GridFsContentStorage.GRID_FS_CHUNKS_COLLECTION);
+    }
+}
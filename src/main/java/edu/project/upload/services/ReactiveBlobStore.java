@@ -0,0 +1,14 @@
+package edu.project.upload.services;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking counterpart of {@link BlobStore} working on the same {@code blobs} collection.
+ */
+public interface ReactiveBlobStore {
+    Mono<String> reference(String hash);
+
+    Mono<String> register(String hash, String storageKey, long size);
+
+    Mono<Void> release(String hash, String storageKey);
+}
@@ -0,0 +1,22 @@
+package edu.project.upload.services;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking counterpart of {@link ContentStorage}, using the same storage keys. Content is stored as it is,
+ * content compressed by {@link ContentStorage} is read as stored and decoded by the caller.
+ */
+public interface ReactiveContentStorage {
+    Mono<String> store(Flux<DataBuffer> content, String fileName, String contentType);
+
+    Mono<StoredObject> stat(String key);
+
+    /**
+     * Emits the bytes {@code [start, end]} without reading what comes before them.
+     */
+    Flux<DataBuffer> read(StoredObject storedObject, long start, long end);
+
+    Mono<Void> delete(String key);
+}
@@ -0,0 +1,74 @@
+package edu.project.upload.services;
+
+import edu.project.upload.configuration.UploadConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@ConditionalOnProperty(prefix = "upload.storage", name = "backend", havingValue = "FILESYSTEM")
+public class ReactiveFileSystemContentStorage implements ReactiveContentStorage {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileSystemLayout layout;
+
+    public ReactiveFileSystemContentStorage(UploadConfiguration uploadConfiguration) throws IOException {
+        this.layout = new FileSystemLayout(Path.of(uploadConfiguration.getStorage().getRoot()));
+        layout.createDirectories();
+    }
+
+    @Override
+    public Mono<String> store(Flux<DataBuffer> content, String fileName, String contentType) {
+        String key = layout.newKey();
+        return Mono.fromCallable(layout::newTempFile)
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(tempFile -> DataBufferUtils.write(content, tempFile, StandardOpenOption.WRITE)
+                        .then(Mono.fromCallable(() -> {
+                            layout.moveIntoPlace(tempFile, key);
+                            return key;
+                        }).subscribeOn(Schedulers.boundedElastic()))
+                        .onErrorResume(e -> Mono.fromCallable(() -> Files.deleteIfExists(tempFile))
+                                .subscribeOn(Schedulers.boundedElastic())
+                                .then(Mono.<String>error(e))));
+    }
+
+    @Override
+    public Mono<StoredObject> stat(String key) {
+        return Mono.fromCallable(() -> {
+                    Path path = layout.path(key);
+                    return Files.exists(path) ? (StoredObject) new LocalStoredObject(key, path, Files.size(path)) : null;
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public Flux<DataBuffer> read(StoredObject storedObject, long start, long end) {
+        if (end < start) {
+            return Flux.empty();
+        }
+        Path path = ((LocalStoredObject) storedObject).path();
+        Flux<DataBuffer> buffers = DataBufferUtils.readAsynchronousFileChannel(
+                () -> AsynchronousFileChannel.open(path, StandardOpenOption.READ), start, DefaultDataBufferFactory.sharedInstance, BUFFER_SIZE);
+        return DataBufferUtils.takeUntilByteCount(buffers, end - start + 1);
+    }
+
+    @Override
+    public Mono<Void> delete(String key) {
+        return Mono.fromCallable(() -> Files.deleteIfExists(layout.path(key)))
+                .subscribeOn(Schedulers.boundedElastic())
+                .then();
+    }
+}
@@ -0,0 +1,82 @@
+package edu.project.upload.services;
+
+import com.mongodb.client.gridfs.model.GridFSFile;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Sorts;
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.bson.types.ObjectId;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.gridfs.ReactiveGridFsTemplate;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+@Service
+@RequiredArgsConstructor
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@ConditionalOnProperty(prefix = "upload.storage", name = "backend", havingValue = "GRIDFS", matchIfMissing = true)
+public class ReactiveGridFsContentStorage implements ReactiveContentStorage {
+    private static final int CHUNK_BATCH_SIZE = 8;
+
+    private final ReactiveGridFsTemplate reactiveGridFsTemplate;
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Override
+    public Mono<String> store(Flux<DataBuffer> content, String fileName, String contentType) {
+        return reactiveGridFsTemplate.store(content, fileName, contentType).map(ObjectId::toHexString);
+    }
+
+    @Override
+    public Mono<StoredObject> stat(String key) {
+        return reactiveGridFsTemplate.findOne(GridFsContentStorage.idQuery(key)).map(GridFsStoredObject::new);
+    }
+
+    /**
+     * Queries only the GridFS chunks that cover the range.
+     */
+    @Override
+    public Flux<DataBuffer> read(StoredObject storedObject, long start, long end) {
+        if (end < start) {
+            return Flux.empty();
+        }
+        GridFSFile gridFSFile = ((GridFsStoredObject) storedObject).gridFSFile();
+        int chunkSize = gridFSFile.getChunkSize();
+        int firstChunk = (int) (start / chunkSize);
+        int lastChunk = (int) (end / chunkSize);
+        return reactiveMongoTemplate.getCollection(GridFsContentStorage.GRID_FS_CHUNKS_COLLECTION)
+                .flatMapMany(chunks -> chunks.find(Filters.and(
+                                Filters.eq("files_id", gridFSFile.getObjectId()),
+                                Filters.gte("n", firstChunk),
+                                Filters.lte("n", lastChunk)))
+                        .sort(Sorts.ascending("n"))
+                        .batchSize(CHUNK_BATCH_SIZE))
+                .index()
+                .<DataBuffer>handle((indexed, sink) -> {
+                    Document chunk = indexed.getT2();
+                    int n = chunk.getInteger("n");
+                    if (n != firstChunk + indexed.getT1()) {
+                        sink.error(new IOException("Missing chunk " + (firstChunk + indexed.getT1()) + " of GridFS file " + gridFSFile.getObjectId()));
+                        return;
+                    }
+                    byte[] data = chunk.get("data", Binary.class).getData();
+                    long chunkStart = (long) n * chunkSize;
+                    int from = (int) Math.max(0, start - chunkStart);
+                    int to = (int) Math.min(data.length, end - chunkStart + 1);
+                    sink.next(DefaultDataBufferFactory.sharedInstance.wrap(ByteBuffer.wrap(data, from, to - from)));
+                });
+    }
+
+    @Override
+    public Mono<Void> delete(String key) {
+        return reactiveGridFsTemplate.delete(GridFsContentStorage.idQuery(key));
+    }
+}
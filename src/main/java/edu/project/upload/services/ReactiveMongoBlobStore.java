@@ -0,0 +1,86 @@
+package edu.project.upload.services;
+
+import edu.project.upload.model.ContentBlob;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveMongoBlobStore implements ReactiveBlobStore {
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final ReactiveContentStorage reactiveContentStorage;
+    private final HashCalculator hashCalculator;
+
+    @Override
+    public Mono<String> reference(String hash) {
+        if (!hashCalculator.isCollisionResistant()) {
+            return Mono.empty();
+        }
+        return reactiveMongoTemplate.findAndModify(
+                        Query.query(Criteria.where("_id").is(hash).and("refCount").gt(0)),
+                        new Update().inc("refCount", 1),
+                        FindAndModifyOptions.options().returnNew(true),
+                        ContentBlob.class)
+                .doOnNext(blob -> log.debug("Referenced blob: {}, refCount: {}", hash, blob.getRefCount()))
+                .map(ContentBlob::getStorageKey);
+    }
+
+    @Override
+    public Mono<String> register(String hash, String storageKey, long size) {
+        if (!hashCalculator.isCollisionResistant()) {
+            return Mono.just(storageKey);
+        }
+        return reference(hash)
+                .flatMap(existing -> reactiveContentStorage.delete(storageKey).thenReturn(existing))
+                .switchIfEmpty(Mono.defer(() -> reactiveMongoTemplate.insert(ContentBlob.builder()
+                                .hash(hash)
+                                .storageKey(storageKey)
+                                .size(size)
+                                .refCount(1)
+                                .createdDate(LocalDateTime.now())
+                                .build())
+                        .thenReturn(storageKey)
+                        .onErrorResume(DuplicateKeyException.class, e -> purgeUnreferenced(hash)
+                                .then(Mono.defer(() -> register(hash, storageKey, size))))));
+    }
+
+    @Override
+    public Mono<Void> release(String hash, String storageKey) {
+        return reactiveMongoTemplate.findAndModify(
+                        Query.query(Criteria.where("_id").is(hash).and("storageKey").is(storageKey)),
+                        new Update().inc("refCount", -1),
+                        FindAndModifyOptions.options().returnNew(true),
+                        ContentBlob.class)
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .flatMap(blob -> {
+                    if (blob.isEmpty()) {
+                        // content stored before blobs were shared is owned by its single file
+                        return reactiveContentStorage.delete(storageKey);
+                    }
+                    log.debug("Released blob: {}, refCount: {}", hash, blob.get().getRefCount());
+                    return blob.get().getRefCount() <= 0 ? purgeUnreferenced(hash) : Mono.<Void>empty();
+                });
+    }
+
+    private Mono<Void> purgeUnreferenced(String hash) {
+        return reactiveMongoTemplate.findAndRemove(
+                        Query.query(Criteria.where("_id").is(hash).and("refCount").lte(0)),
+                        ContentBlob.class)
+                .flatMap(removed -> reactiveContentStorage.delete(removed.getStorageKey()));
+    }
+}
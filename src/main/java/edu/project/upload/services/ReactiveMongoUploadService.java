@@ -0,0 +1,332 @@
+package edu.project.upload.services;
+
+import edu.project.upload.configuration.UploadConfiguration;
+import edu.project.upload.model.FileInfo;
+import edu.project.upload.model.UserTags;
+import edu.project.upload.model.Visibility;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveMongoUploadService implements ReactiveUploadService {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int DECODE_DEMAND = 4;
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final ReactiveContentStorage reactiveContentStorage;
+    private final ReactiveBlobStore reactiveBlobStore;
+    private final HashCalculator hashCalculator;
+    private final UploadConfiguration uploadConfiguration;
+    private final UploadMetrics uploadMetrics;
+    private final FileDeletionWorker fileDeletionWorker;
+
+    /**
+     * Streams the content into the storage backend with backpressure, digesting every buffer on the way through.
+     * Like the single-pass blocking upload, name and content conflicts surface as duplicate keys on insert.
+     */
+    @Override
+    public Mono<FileInfo> uploadFile(String userId, String fileName, Visibility visibility, List<String> tags,
+                                     String contentType, Flux<DataBuffer> content) {
+        return Mono.defer(() -> {
+            Set<String> normalizedTags = MongoUploadService.normalizeTags(tags);
+            MessageDigest messageDigest = hashCalculator.newDigest();
+            AtomicLong fileSize = new AtomicLong();
+            Flux<DataBuffer> digestingContent = content.doOnNext(buffer -> {
+                fileSize.addAndGet(buffer.readableByteCount());
+                try (DataBuffer.ByteBufferIterator iterator = buffer.readableByteBuffers()) {
+                    iterator.forEachRemaining(messageDigest::update);
+                }
+            });
+            uploadMetrics.uploadStarted();
+            long storeStart = System.nanoTime();
+            AtomicLong uploadedBytes = new AtomicLong();
+            return reactiveContentStorage.store(digestingContent, fileName, contentType)
+                    .flatMap(storageKey -> {
+                        uploadMetrics.recordStore(storeStart);
+                        String hash = hashCalculator.getHash(messageDigest);
+                        return reactiveBlobStore.register(hash, storageKey, fileSize.get())
+                                .flatMap(storedId -> saveFileInfo(MongoUploadService.newFileInfo(userId, fileName, visibility,
+                                        normalizedTags, contentType, fileSize.get(), hash, hashCalculator.getAlgorithm(), storedId)));
+                    })
+                    .doOnNext(saved -> uploadedBytes.set(saved.getFileSize()))
+                    .doFinally(signal -> uploadMetrics.uploadFinished(uploadedBytes.get()));
+        });
+    }
+
+    private Mono<FileInfo> saveFileInfo(FileInfo fileInfo) {
+        long start = System.nanoTime();
+        return reactiveMongoTemplate.insert(fileInfo)
+                .onErrorResume(DuplicateKeyException.class, e -> retryAfterPurge(fileInfo.getUserId(), List.of(fileInfo.getFileName()),
+                        List.of(fileInfo.getHash()), e, reactiveMongoTemplate.insert(fileInfo)))
+                .doFinally(signal -> uploadMetrics.recordSave(start))
+                .doOnNext(saved -> log.debug("Saved file info in Mongo: {}", saved.getFileId()))
+                .onErrorResume(e -> reactiveBlobStore.release(fileInfo.getHash(), fileInfo.getStorageKey()).then(Mono.<FileInfo>error(e)))
+                .onErrorMap(DuplicateKeyException.class, MongoUploadService::duplicateFileError)
+                .flatMap(saved -> incrementTags(saved.getUserId(), saved.getTags()).thenReturn(saved));
+    }
+
+    @Override
+    public Mono<FileInfo> renameFile(String fileId, String newFileName, String userId) {
+        return findOwnedFile(fileId, userId)
+                .flatMap(fileInfo -> updateLiveFile(fileId, userId, Update.update("fileName", newFileName))
+                        .onErrorResume(DuplicateKeyException.class, e -> retryAfterPurge(userId, List.of(newFileName), List.of(), e,
+                                updateLiveFile(fileId, userId, Update.update("fileName", newFileName))))
+                        .then(Mono.fromSupplier(() -> {
+                            fileInfo.setFileName(newFileName);
+                            return fileInfo;
+                        })))
+                .onErrorMap(DuplicateKeyException.class, e -> new IllegalArgumentException("Filename already exists for user", e));
+    }
+
+    @Override
+    public Mono<Page<FileInfo>> listFiles(String userId, Visibility visibility, String tag, PageRequest pageRequest) {
+        Criteria criteria;
+        if (visibility == Visibility.PUBLIC) {
+            criteria = Criteria.where("visibility").is(Visibility.PUBLIC.name());
+            if (StringUtils.hasText(tag)) {
+                criteria = criteria.and("tags").in(tag.toLowerCase());
+            }
+        } else {
+            criteria = Criteria.where("userId").is(userId);
+            if (tag != null) {
+                criteria = criteria.and("tags").in(tag.toLowerCase());
+            }
+        }
+        Query query = Query.query(criteria.and("deletedAt").is(null));
+        return reactiveMongoTemplate.find(Query.of(query).with(pageRequest), FileInfo.class)
+                .collectList()
+                .zipWith(reactiveMongoTemplate.count(query, FileInfo.class))
+                .<Page<FileInfo>>map(pageAndTotal -> new PageImpl<>(pageAndTotal.getT1(), pageRequest, pageAndTotal.getT2()));
+    }
+
+    /**
+     * Conflicts with a deleted file that still holds the name or content are resolved by finishing its delete, as
+     * the blocking stack does; the worker's Mongo calls block, so they run on a bounded elastic thread.
+     */
+    private <T> Mono<T> retryAfterPurge(String userId, List<String> fileNames, List<String> hashes, DuplicateKeyException conflict,
+                                        Mono<T> retry) {
+        return Mono.fromCallable(() -> fileDeletionWorker.purgeTombstones(userId, fileNames, hashes))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(purged -> purged ? retry : Mono.<T>error(conflict));
+    }
+
+    /**
+     * Tombstones the file like the blocking stack; the {@link FileDeletionWorker} releases its content and removes it.
+     */
+    @Override
+    public Mono<Void> deleteFile(String fileId, String userId) {
+        return findOwnedFile(fileId, userId)
+                .flatMap(fileInfo -> reactiveMongoTemplate.updateFirst(
+                                Query.query(Criteria.where("_id").is(fileId).and("deletedAt").is(null)),
+                                Update.update("deletedAt", LocalDateTime.now()),
+                                FileInfo.class)
+                        .flatMap(result -> result.getModifiedCount() == 0
+                                ? Mono.<Void>error(new NoSuchElementException("No value present"))
+                                : decrementTags(userId, fileInfo.getTags())));
+    }
+
+    @Override
+    public Mono<ServerResponse> downloadFile(String fileId, HttpHeaders requestHeaders) {
+        return findFile(fileId)
+                .flatMap(fileInfo -> {
+                    String cacheControl = uploadConfiguration.getCacheControl().get(fileInfo.getVisibility());
+                    if (ConditionalDownloads.isNotModified(requestHeaders, fileInfo)) {
+                        return ServerResponse.status(HttpStatus.NOT_MODIFIED)
+                                .headers(headers -> ConditionalDownloads.validatorHeaders(headers, fileInfo, cacheControl))
+                                .build();
+                    }
+                    return reactiveContentStorage.stat(fileInfo.getStorageKey())
+                            .switchIfEmpty(Mono.error(() -> new NoSuchElementException("No stored content for file " + fileId)))
+                            .flatMap(storedObject -> download(fileInfo, storedObject, requestHeaders, cacheControl));
+                });
+    }
+
+    private Mono<ServerResponse> download(FileInfo fileInfo, StoredObject storedObject, HttpHeaders requestHeaders, String cacheControl) {
+        long length = fileInfo.getFileSize();
+        HttpRange range = ConditionalDownloads.rangeApplies(requestHeaders, fileInfo) ? singleRange(requestHeaders) : null;
+        ContentCodec codec = storedObject.codec().orElse(null);
+        if (codec != null && range == null && codec.isAcceptedBy(requestHeaders)) {
+            return downloadEncoded(fileInfo, storedObject, codec, cacheControl);
+        }
+        ServerResponse.BodyBuilder response;
+        long start = 0;
+        long end = length - 1;
+        if (range == null) {
+            response = ServerResponse.ok();
+        } else {
+            start = range.getRangeStart(length);
+            if (start >= length) {
+                return ServerResponse.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                        .header(HttpHeaders.CONTENT_RANGE, "bytes */" + length)
+                        .build();
+            }
+            end = range.getRangeEnd(length);
+            response = ServerResponse.status(HttpStatus.PARTIAL_CONTENT)
+                    .header(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+        }
+        response = response
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileInfo.getFileName() + "\"")
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .headers(headers -> ConditionalDownloads.validatorHeaders(headers, fileInfo, cacheControl))
+                .contentType(MediaType.parseMediaType(fileInfo.getContentType()))
+                .contentLength(end - start + 1);
+        if (codec != null) {
+            return response.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                    .body(BodyInserters.fromDataBuffers(uploadMetrics.meteredDownload(decode(storedObject, codec, start, end))));
+        }
+        if (storedObject.localPath().isPresent() && !requestHeaders.containsKey(HttpHeaders.RANGE)) {
+            // a file resource is written with zero-copy transfers where the server supports them
+            uploadMetrics.downloaded(length);
+            return response.body(BodyInserters.fromResource(new FileSystemResource(storedObject.localPath().get())));
+        }
+        return response.body(BodyInserters.fromDataBuffers(uploadMetrics.meteredDownload(reactiveContentStorage.read(storedObject, start, end))));
+    }
+
+    /**
+     * Sends compressed content as it is stored, for clients that accept its codec.
+     */
+    private Mono<ServerResponse> downloadEncoded(FileInfo fileInfo, StoredObject storedObject, ContentCodec codec, String cacheControl) {
+        ServerResponse.BodyBuilder response = ServerResponse.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileInfo.getFileName() + "\"")
+                .header(HttpHeaders.CONTENT_ENCODING, codec.getContentEncoding())
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                .headers(headers -> ConditionalDownloads.validatorHeaders(headers, fileInfo, cacheControl, codec))
+                .contentType(MediaType.parseMediaType(fileInfo.getContentType()))
+                .contentLength(storedObject.length());
+        if (storedObject.localPath().isPresent()) {
+            uploadMetrics.downloaded(storedObject.length());
+            return response.body(BodyInserters.fromResource(new FileSystemResource(storedObject.localPath().get())));
+        }
+        return response.body(BodyInserters.fromDataBuffers(uploadMetrics.meteredDownload(
+                reactiveContentStorage.read(storedObject, 0, storedObject.length() - 1))));
+    }
+
+    /**
+     * The codecs only come as blocking streams, so the stored bytes are decoded through an input stream bridge on a
+     * bounded elastic thread. A range is served by decoding and dropping everything before it.
+     */
+    private Flux<DataBuffer> decode(StoredObject storedObject, ContentCodec codec, long start, long end) {
+        Flux<DataBuffer> stored = reactiveContentStorage.read(storedObject, 0, storedObject.length() - 1);
+        Flux<DataBuffer> content = DataBufferUtils.readInputStream(() -> {
+                    InputStream decoded = codec.decode(DataBufferUtils.subscriberInputStream(stored, DECODE_DEMAND));
+                    decoded.skipNBytes(start);
+                    return decoded;
+                }, DefaultDataBufferFactory.sharedInstance, BUFFER_SIZE)
+                .subscribeOn(Schedulers.boundedElastic());
+        return DataBufferUtils.takeUntilByteCount(content, end - start + 1);
+    }
+
+    /**
+     * Only single ranges are served partially; anything else is answered with the full content, which RFC 9110 allows.
+     */
+    private HttpRange singleRange(HttpHeaders requestHeaders) {
+        try {
+            List<HttpRange> ranges = requestHeaders.getRange();
+            return ranges.size() == 1 ? ranges.get(0) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public Mono<FileInfo> changeVisibility(String fileId, String userId, Visibility visibility) {
+        return findOwnedFile(fileId, userId)
+                .flatMap(fileInfo -> updateLiveFile(fileId, userId, Update.update("visibility", visibility))
+                        .then(Mono.fromSupplier(() -> {
+                            fileInfo.setVisibility(visibility);
+                            return fileInfo;
+                        })));
+    }
+
+    /**
+     * Sets single fields instead of saving the whole document, which would undo a concurrent delete.
+     */
+    private Mono<Void> updateLiveFile(String fileId, String userId, Update update) {
+        Query query = Query.query(Criteria.where("_id").is(fileId).and("userId").is(userId).and("deletedAt").is(null));
+        return reactiveMongoTemplate.updateFirst(query, update, FileInfo.class)
+                .flatMap(result -> result.getMatchedCount() == 0
+                        ? Mono.<Void>error(new NoSuchElementException("No file " + fileId))
+                        : Mono.<Void>empty());
+    }
+
+    @Override
+    public Mono<Set<String>> listTags(String userId) {
+        return listTagCounts(userId).map(counts -> Set.copyOf(counts.keySet()));
+    }
+
+    @Override
+    public Mono<Map<String, Long>> listTagCounts(String userId) {
+        if (!StringUtils.hasText(userId)) {
+            return Mono.error(new IllegalArgumentException("User should be specified"));
+        }
+        return reactiveMongoTemplate.findById(userId, UserTags.class)
+                .map(TagCounts::decode)
+                .defaultIfEmpty(Map.of());
+    }
+
+    private Mono<Void> incrementTags(String userId, Set<String> tags) {
+        if (tags == null || tags.isEmpty()) {
+            return Mono.empty();
+        }
+        return reactiveMongoTemplate.upsert(TagCounts.userQuery(userId), TagCounts.incrementUpdate(tags, 1), UserTags.class).then();
+    }
+
+    private Mono<Void> decrementTags(String userId, Set<String> tags) {
+        if (tags == null || tags.isEmpty()) {
+            return Mono.empty();
+        }
+        return reactiveMongoTemplate.updateFirst(TagCounts.userQuery(userId), TagCounts.incrementUpdate(tags, -1), UserTags.class)
+                .thenMany(Flux.fromIterable(tags)
+                        .concatMap(tag -> reactiveMongoTemplate.updateFirst(TagCounts.exhaustedTagQuery(userId, tag), TagCounts.unsetUpdate(tag), UserTags.class)))
+                .then();
+    }
+
+    private Mono<FileInfo> findFile(String fileId) {
+        return reactiveMongoTemplate.findById(fileId, FileInfo.class)
+                .filter(fileInfo -> fileInfo.getDeletedAt() == null)
+                .switchIfEmpty(Mono.error(() -> new NoSuchElementException("No value present")));
+    }
+
+    private Mono<FileInfo> findOwnedFile(String fileId, String userId) {
+        return findFile(fileId)
+                .flatMap(fileInfo -> fileInfo.getUserId().equals(userId)
+                        ? Mono.just(fileInfo)
+                        : Mono.<FileInfo>error(new AuthException("Not an owner")));
+    }
+}
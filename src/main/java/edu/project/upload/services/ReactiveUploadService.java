@@ -0,0 +1,37 @@
+package edu.project.upload.services;
+
+import edu.project.upload.model.FileInfo;
+import edu.project.upload.model.Visibility;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Non-blocking variant of {@link UploadService} for nodes running the WebFlux stack.
+ */
+public interface ReactiveUploadService {
+    Mono<FileInfo> uploadFile(String userId, String fileName, Visibility visibility, List<String> tags,
+                              String contentType, Flux<DataBuffer> content);
+
+    Mono<FileInfo> renameFile(String fileId, String newFileName, String userId);
+
+    Mono<Page<FileInfo>> listFiles(String userId, Visibility visibility, String tag, PageRequest pageRequest);
+
+    Mono<Void> deleteFile(String fileId, String userId);
+
+    Mono<ServerResponse> downloadFile(String fileId, HttpHeaders requestHeaders);
+
+    Mono<FileInfo> changeVisibility(String fileId, String userId, Visibility visibility);
+
+    Mono<Set<String>> listTags(String userId);
+
+    Mono<Map<String, Long>> listTagCounts(String userId);
+}
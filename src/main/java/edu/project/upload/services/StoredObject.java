@@ -0,0 +1,30 @@
+package edu.project.upload.services;
+
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Stored content as described by its {@link ContentStorage}.
+ */
+public interface StoredObject {
+    String key();
+
+    /**
+     * Stored bytes, which is less than the file size when the content is compressed.
+     */
+    long length();
+
+    /**
+     * The codec the content was stored with, empty when the stored bytes are the content itself.
+     */
+    default Optional<ContentCodec> codec() {
+        return Optional.empty();
+    }
+
+    /**
+     * The file holding the content when the backend keeps it on the local filesystem, which allows zero-copy writes.
+     */
+    default Optional<Path> localPath() {
+        return Optional.empty();
+    }
+}
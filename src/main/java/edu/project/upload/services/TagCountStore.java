@@ -0,0 +1,37 @@
+package edu.project.upload.services;
+
+import java.util.Collection;
+import java.util.Map;
+
+public interface TagCountStore {
+    default void increment(String userId, Collection<String> tags) {
+        increment(userId, tags, 1);
+    }
+
+    /**
+     * Counts {@code files} new files carrying all of {@code tags}.
+     */
+    void increment(String userId, Collection<String> tags, long files);
+
+    /**
+     * Decrements the counts and drops the tags that no longer have files.
+     */
+    void decrement(String userId, Collection<String> tags);
+
+    /**
+     * Adds a signed number of files per tag and drops the tags that no longer have files.
+     */
+    void add(String userId, Map<String, Long> deltas);
+
+    Map<String, Long> counts(String userId);
+
+    /**
+     * Recomputes all counts from the {@code files} collection.
+     */
+    void rebuild();
+
+    /**
+     * Recomputes the counts of one user from the {@code files} collection.
+     */
+    void rebuild(String userId);
+}
@@ -0,0 +1,75 @@
+package edu.project.upload.services;
+
+import edu.project.upload.model.UserTags;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Queries and updates on {@link UserTags} shared by the blocking and the reactive implementation.
+ */
+final class TagCounts {
+    private static final String COUNTS = "counts";
+    static final String VERSION = "version";
+
+    private TagCounts() {
+    }
+
+    static Query userQuery(String userId) {
+        return Query.query(Criteria.where("_id").is(userId));
+    }
+
+    static Update incrementUpdate(Collection<String> tags, long delta) {
+        Update update = new Update();
+        for (String tag : tags) {
+            update.inc(field(tag), delta);
+        }
+        return update.inc(VERSION, 1);
+    }
+
+    static Update deltaUpdate(Map<String, Long> deltas) {
+        Update update = new Update();
+        deltas.forEach((tag, delta) -> update.inc(field(tag), delta));
+        return update.inc(VERSION, 1);
+    }
+
+    /**
+     * Matches the user's document only while the tag count is not positive, so a concurrent increment wins over the cleanup.
+     */
+    static Query exhaustedTagQuery(String userId, String tag) {
+        return Query.query(Criteria.where("_id").is(userId).and(field(tag)).lte(0));
+    }
+
+    static Update unsetUpdate(String tag) {
+        return new Update().unset(field(tag));
+    }
+
+    static Map<String, Long> decode(UserTags userTags) {
+        Map<String, Long> counts = new HashMap<>();
+        if (userTags == null || userTags.getCounts() == null) {
+            return counts;
+        }
+        userTags.getCounts().forEach((key, count) -> {
+            if (count > 0) {
+                counts.put(decodeKey(key), count);
+            }
+        });
+        return counts;
+    }
+
+    static String encodeKey(String tag) {
+        return tag.replace("%", "%25").replace(".", "%2E").replace("$", "%24");
+    }
+
+    private static String decodeKey(String key) {
+        return key.replace("%2E", ".").replace("%24", "$").replace("%25", "%");
+    }
+
+    private static String field(String tag) {
+        return COUNTS + "." + encodeKey(tag);
+    }
+}
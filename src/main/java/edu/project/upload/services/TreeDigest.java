@@ -0,0 +1,171 @@
+package edu.project.upload.services;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Tree hash in the spirit of BLAKE3: the content is cut into 1 MiB segments that are hashed with SHA-256 on
+ * other cores while the next segment is still arriving, and the root hashes the ordered leaf digests.
+ * <pre>
+ * leaf(i) = SHA-256(0x00 || i || segment(i))
+ * root    = SHA-256(0x01 || leaf(0) || ... || leaf(n-1) || length)
+ * </pre>
+ * The result does not depend on the parallelism. Leaves are hashed on a small daemon pool of this class rather than
+ * a shared one, so large uploads do not starve other users of the common pool. At most {@link #MAX_IN_FLIGHT}
+ * segments of all digests wait for hashing, so a producer that is faster than the leaf hashing blocks in
+ * {@code update}; their buffers are recycled instead of allocating 1 MiB per digest.
+ */
+class TreeDigest extends MessageDigest {
+    static final String ALGORITHM = "TREE-SHA-256";
+    static final int SEGMENT_SIZE = 1 << 20;
+
+    private static final String LEAF_ALGORITHM = "SHA-256";
+    private static final int PARALLELISM = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+    private static final int MAX_IN_FLIGHT = 2 * PARALLELISM;
+    private static final ExecutorService LEAF_EXECUTOR = Executors.newFixedThreadPool(PARALLELISM,
+            Thread.ofPlatform().daemon().name("tree-digest-", 0).factory());
+    private static final Semaphore IN_FLIGHT = new Semaphore(MAX_IN_FLIGHT);
+    private static final BlockingQueue<byte[]> FREE_SEGMENTS = new ArrayBlockingQueue<>(MAX_IN_FLIGHT);
+    private static final byte[] EMPTY_SEGMENT = new byte[0];
+
+    private final List<CompletableFuture<byte[]>> leaves = new ArrayList<>();
+    /**
+     * Taken from {@link #FREE_SEGMENTS} on the first byte of a segment, so short content does not allocate one.
+     */
+    private byte[] segment;
+    private int segmentLength;
+    private long totalLength;
+
+    TreeDigest() {
+        super(ALGORITHM);
+    }
+
+    @Override
+    protected int engineGetDigestLength() {
+        return 32;
+    }
+
+    @Override
+    protected void engineUpdate(byte input) {
+        segment()[segmentLength++] = input;
+        totalLength++;
+        if (segmentLength == SEGMENT_SIZE) {
+            submitSegment();
+        }
+    }
+
+    @Override
+    protected void engineUpdate(byte[] input, int offset, int len) {
+        totalLength += len;
+        while (len > 0) {
+            int copied = Math.min(len, SEGMENT_SIZE - segmentLength);
+            System.arraycopy(input, offset, segment(), segmentLength, copied);
+            segmentLength += copied;
+            offset += copied;
+            len -= copied;
+            if (segmentLength == SEGMENT_SIZE) {
+                submitSegment();
+            }
+        }
+    }
+
+    @Override
+    protected void engineUpdate(ByteBuffer input) {
+        totalLength += input.remaining();
+        while (input.hasRemaining()) {
+            int copied = Math.min(input.remaining(), SEGMENT_SIZE - segmentLength);
+            input.get(segment(), segmentLength, copied);
+            segmentLength += copied;
+            if (segmentLength == SEGMENT_SIZE) {
+                submitSegment();
+            }
+        }
+    }
+
+    @Override
+    protected byte[] engineDigest() {
+        if (segmentLength > 0 || leaves.isEmpty()) {
+            submitSegment();
+        }
+        MessageDigest root = sha256();
+        root.update((byte) 1);
+        for (CompletableFuture<byte[]> leaf : leaves) {
+            root.update(leaf.join());
+        }
+        root.update(ByteBuffer.allocate(Long.BYTES).putLong(totalLength).array());
+        engineReset();
+        return root.digest();
+    }
+
+    @Override
+    protected void engineReset() {
+        leaves.clear();
+        if (segment != null) {
+            recycle(segment);
+            segment = null;
+        }
+        segmentLength = 0;
+        totalLength = 0;
+    }
+
+    private byte[] segment() {
+        if (segment == null) {
+            segment = FREE_SEGMENTS.poll();
+            if (segment == null) {
+                segment = new byte[SEGMENT_SIZE];
+            }
+        }
+        return segment;
+    }
+
+    private void submitSegment() {
+        IN_FLIGHT.acquireUninterruptibly();
+        byte[] data = segment != null ? segment : EMPTY_SEGMENT;
+        int length = segmentLength;
+        long index = leaves.size();
+        CompletableFuture<byte[]> leaf;
+        try {
+            leaf = CompletableFuture.supplyAsync(() -> {
+                try {
+                    MessageDigest digest = sha256();
+                    digest.update((byte) 0);
+                    digest.update(ByteBuffer.allocate(Long.BYTES).putLong(index).array());
+                    digest.update(data, 0, length);
+                    return digest.digest();
+                } finally {
+                    recycle(data);
+                    IN_FLIGHT.release();
+                }
+            }, LEAF_EXECUTOR);
+        } catch (RuntimeException e) {
+            IN_FLIGHT.release();
+            throw e;
+        }
+        leaves.add(leaf);
+        segment = null;
+        segmentLength = 0;
+    }
+
+    private static void recycle(byte[] segment) {
+        if (segment.length == SEGMENT_SIZE) {
+            FREE_SEGMENTS.offer(segment);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance(LEAF_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(LEAF_ALGORITHM + " is not available", e);
+        }
+    }
+}
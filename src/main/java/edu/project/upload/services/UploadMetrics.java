@@ -0,0 +1,147 @@
+package edu.project.upload.services;
+
+import edu.project.upload.configuration.UploadConfiguration;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Meters of the upload and download hot paths. All meters are created once, recording is a counter add or a
+ * timer update per operation; streamed bytes are added once per stream on the blocking path.
+ */
+@Service
+public class UploadMetrics {
+    private final Counter uploadedBytes;
+    private final Counter downloadedBytes;
+    private final Timer hashTimer;
+    private final Timer storeTimer;
+    private final Timer saveTimer;
+    private final AtomicInteger activeUploads = new AtomicInteger();
+    private final AtomicInteger activeDownloads = new AtomicInteger();
+
+    public UploadMetrics(MeterRegistry meterRegistry, UploadConfiguration uploadConfiguration) {
+        uploadedBytes = Counter.builder("upload.bytes")
+                .description("Content bytes of completed uploads")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        downloadedBytes = Counter.builder("download.bytes")
+                .description("Content bytes sent by downloads")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        hashTimer = Timer.builder("upload.hash")
+                .description("Hashing of uploaded content before it is stored")
+                .tag("algorithm", String.valueOf(uploadConfiguration.getHashAlgo()))
+                .register(meterRegistry);
+        storeTimer = Timer.builder("upload.store")
+                .description("Writing uploaded content to the storage backend, including hashing in single-pass mode")
+                .tag("backend", uploadConfiguration.getStorage().getBackend().name())
+                .register(meterRegistry);
+        saveTimer = Timer.builder("upload.metadata.save")
+                .description("Inserting the file metadata")
+                .register(meterRegistry);
+        Gauge.builder("upload.streams.active", activeUploads, AtomicInteger::get)
+                .description("Content streams in flight")
+                .tag("direction", "upload")
+                .register(meterRegistry);
+        Gauge.builder("upload.streams.active", activeDownloads, AtomicInteger::get)
+                .description("Content streams in flight")
+                .tag("direction", "download")
+                .register(meterRegistry);
+    }
+
+    void recordHash(long startNanos) {
+        hashTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    void recordStore(long startNanos) {
+        storeTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    void recordSave(long startNanos) {
+        saveTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    void uploadStarted() {
+        activeUploads.incrementAndGet();
+    }
+
+    void uploadFinished(long bytes) {
+        activeUploads.decrementAndGet();
+        if (bytes > 0) {
+            uploadedBytes.increment(bytes);
+        }
+    }
+
+    /**
+     * For uploads whose streams are not finished one by one, such as batches.
+     */
+    void uploaded(long bytes) {
+        uploadedBytes.increment(bytes);
+    }
+
+    /**
+     * Counts the stream as in flight until it is closed and adds the bytes read from it on close.
+     */
+    InputStream meteredDownload(InputStream inputStream) {
+        activeDownloads.incrementAndGet();
+        return new FilterInputStream(inputStream) {
+            private long bytes;
+            private boolean closed;
+
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    bytes++;
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int read = super.read(buffer, offset, length);
+                if (read > 0) {
+                    bytes += read;
+                }
+                return read;
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    if (!closed) {
+                        closed = true;
+                        activeDownloads.decrementAndGet();
+                        downloadedBytes.increment(bytes);
+                    }
+                }
+            }
+        };
+    }
+
+    Flux<DataBuffer> meteredDownload(Flux<DataBuffer> content) {
+        return content
+                .doOnSubscribe(subscription -> activeDownloads.incrementAndGet())
+                .doOnNext(buffer -> downloadedBytes.increment(buffer.readableByteCount()))
+                .doFinally(signal -> activeDownloads.decrementAndGet());
+    }
+
+    /**
+     * For bodies the server writes on its own, such as zero-copy file transfers.
+     */
+    void downloaded(long bytes) {
+        downloadedBytes.increment(bytes);
+    }
+}
@@ -1,26 +1,65 @@
 package edu.project.upload.services;
 
+import edu.project.upload.model.BatchUploadItem;
+import edu.project.upload.model.BulkUpdateResult;
+import edu.project.upload.model.CursorPage;
 import edu.project.upload.model.FileInfo;
+import edu.project.upload.requests.FileArchiveRequest;
+import edu.project.upload.requests.FileBatchUploadRequest;
+import edu.project.upload.requests.FileBulkRequest;
+import edu.project.upload.requests.FileListRequest;
 import edu.project.upload.requests.FileUploadRequest;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import edu.project.upload.model.Visibility;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public interface UploadService {
     FileInfo uploadFile(FileUploadRequest request);
 
+    /**
+     * Stores content read straight from the request, without a spooled copy.
+     */
+    FileInfo uploadFile(String userId, String fileName, Visibility visibility, Collection<String> tags,
+                        String contentType, InputStream content);
+
+    List<BatchUploadItem> uploadFiles(FileBatchUploadRequest request);
+
     FileInfo renameFile(String fileId, String newFileName, String userId);
 
     Page<FileInfo> listFiles(String userId, Visibility visibility, String tag, PageRequest pageRequest);
 
+    CursorPage<FileInfo> listFiles(FileListRequest request);
+
     void deleteFile(String fileId, String userId);
 
+    BulkUpdateResult deleteFiles(FileBulkRequest request);
+
+    BulkUpdateResult changeVisibility(FileBulkRequest request);
+
+    BulkUpdateResult updateTags(FileBulkRequest request);
+
     ResponseEntity<?> downloadFile(String fileId);
 
+    ResponseEntity<?> downloadFile(String fileId, HttpHeaders requestHeaders);
+
+    /**
+     * Writes the selected files as one archive, without buffering them.
+     */
+    void writeArchive(FileArchiveRequest request, OutputStream outputStream) throws IOException;
+
     FileInfo changeVisibility(String fileId, String userId, Visibility visibility);
 
       Set<String> listTags(String userId );
+
+    Map<String, Long> listTagCounts(String userId);
 }
@@ -0,0 +1,19 @@
+package edu.project.upload.services;
+
+import edu.project.upload.model.FileInfo;
+import edu.project.upload.model.UploadSession;
+import edu.project.upload.requests.UploadSessionCreateRequest;
+
+public interface UploadSessionService {
+    UploadSession createSession(UploadSessionCreateRequest request);
+
+    UploadSession uploadChunk(String sessionId, String userId, int chunkNumber, byte[] data);
+
+    UploadSession getSession(String sessionId, String userId);
+
+    FileInfo commitSession(String sessionId, String userId);
+
+    void abortSession(String sessionId, String userId);
+
+    void cleanupExpiredSessions();
+}
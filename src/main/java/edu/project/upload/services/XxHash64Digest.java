@@ -0,0 +1,142 @@
+package edu.project.upload.services;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+
+/**
+ * Streaming xxHash64 (seed 0) as a {@link MessageDigest}, so it plugs into everything that takes a digest.
+ * Several times faster than MD5, but not collision resistant; the digest is the canonical big-endian form.
+ */
+class XxHash64Digest extends MessageDigest {
+    static final String ALGORITHM = "XXH64";
+
+    private static final long PRIME64_1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME64_2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME64_3 = 0x165667B19E3779F9L;
+    private static final long PRIME64_4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME64_5 = 0x27D4EB2F165667C5L;
+    private static final int STRIPE = 32;
+
+    private final ByteBuffer stripe = ByteBuffer.allocate(STRIPE).order(ByteOrder.LITTLE_ENDIAN);
+    private long v1;
+    private long v2;
+    private long v3;
+    private long v4;
+    private long totalLength;
+
+    XxHash64Digest() {
+        super(ALGORITHM);
+        engineReset();
+    }
+
+    @Override
+    protected int engineGetDigestLength() {
+        return Long.BYTES;
+    }
+
+    @Override
+    protected void engineUpdate(byte input) {
+        stripe.put(input);
+        totalLength++;
+        if (!stripe.hasRemaining()) {
+            consumeStripe();
+        }
+    }
+
+    @Override
+    protected void engineUpdate(byte[] input, int offset, int len) {
+        engineUpdate(ByteBuffer.wrap(input, offset, len));
+    }
+
+    @Override
+    protected void engineUpdate(ByteBuffer input) {
+        ByteBuffer data = input.slice().order(ByteOrder.LITTLE_ENDIAN);
+        totalLength += data.remaining();
+        if (stripe.position() > 0) {
+            int fill = Math.min(stripe.remaining(), data.remaining());
+            stripe.put(data.slice(data.position(), fill));
+            data.position(data.position() + fill);
+            if (stripe.hasRemaining()) {
+                input.position(input.limit());
+                return;
+            }
+            consumeStripe();
+        }
+        while (data.remaining() >= STRIPE) {
+            v1 = round(v1, data.getLong());
+            v2 = round(v2, data.getLong());
+            v3 = round(v3, data.getLong());
+            v4 = round(v4, data.getLong());
+        }
+        stripe.put(data);
+        input.position(input.limit());
+    }
+
+    @Override
+    protected byte[] engineDigest() {
+        long hash;
+        if (totalLength >= STRIPE) {
+            hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            hash = mergeRound(hash, v1);
+            hash = mergeRound(hash, v2);
+            hash = mergeRound(hash, v3);
+            hash = mergeRound(hash, v4);
+        } else {
+            hash = PRIME64_5;
+        }
+        hash += totalLength;
+
+        stripe.flip();
+        while (stripe.remaining() >= Long.BYTES) {
+            hash ^= round(0, stripe.getLong());
+            hash = Long.rotateLeft(hash, 27) * PRIME64_1 + PRIME64_4;
+        }
+        if (stripe.remaining() >= Integer.BYTES) {
+            hash ^= (stripe.getInt() & 0xFFFFFFFFL) * PRIME64_1;
+            hash = Long.rotateLeft(hash, 23) * PRIME64_2 + PRIME64_3;
+        }
+        while (stripe.hasRemaining()) {
+            hash ^= (stripe.get() & 0xFFL) * PRIME64_5;
+            hash = Long.rotateLeft(hash, 11) * PRIME64_1;
+        }
+        hash ^= hash >>> 33;
+        hash *= PRIME64_2;
+        hash ^= hash >>> 29;
+        hash *= PRIME64_3;
+        hash ^= hash >>> 32;
+
+        engineReset();
+        return ByteBuffer.allocate(Long.BYTES).putLong(hash).array();
+    }
+
+    @Override
+    protected void engineReset() {
+        v1 = PRIME64_1 + PRIME64_2;
+        v2 = PRIME64_2;
+        v3 = 0;
+        v4 = -PRIME64_1;
+        totalLength = 0;
+        stripe.clear();
+    }
+
+    private void consumeStripe() {
+        stripe.flip();
+        v1 = round(v1, stripe.getLong());
+        v2 = round(v2, stripe.getLong());
+        v3 = round(v3, stripe.getLong());
+        v4 = round(v4, stripe.getLong());
+        stripe.clear();
+    }
+
+    private static long round(long acc, long input) {
+        acc += input * PRIME64_2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * PRIME64_1;
+    }
+
+    private static long mergeRound(long acc, long value) {
+        acc ^= round(0, value);
+        return acc * PRIME64_1 + PRIME64_4;
+    }
+}
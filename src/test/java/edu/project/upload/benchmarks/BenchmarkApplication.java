@@ -0,0 +1,56 @@
+package edu.project.upload.benchmarks;
+
+import edu.project.upload.UploadServiceApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.testcontainers.containers.MongoDBContainer;
+
+import java.util.UUID;
+
+/**
+ * Application context for the end-to-end benchmarks, without the web layer. Mongo is a throwaway
+ * Testcontainers instance unless {@code -Dbenchmark.mongodb.uri=...} points at an existing server. Every instance
+ * works in a database of its own that is dropped on {@link #close()}, so trials never see each other's data.
+ */
+class BenchmarkApplication implements AutoCloseable {
+    private static final String MONGO_IMAGE = "mongo:7.0";
+
+    private final MongoDBContainer mongo;
+    private final ConfigurableApplicationContext context;
+
+    BenchmarkApplication(String... properties) {
+        String uri = System.getProperty("benchmark.mongodb.uri");
+        if (uri == null) {
+            mongo = new MongoDBContainer(MONGO_IMAGE);
+            mongo.start();
+            uri = mongo.getReplicaSetUrl("upload-benchmark");
+        } else {
+            mongo = null;
+        }
+        context = new SpringApplicationBuilder(UploadServiceApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties("spring.data.mongodb.uri=" + uri,
+                        "spring.data.mongodb.database=upload-benchmark-" + UUID.randomUUID(),
+                        "logging.level.root=WARN")
+                .properties(properties)
+                .run();
+    }
+
+    <T> T getBean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    @Override
+    public void close() {
+        try {
+            context.getBean(MongoTemplate.class).getDb().drop();
+        } finally {
+            context.close();
+        }
+        if (mongo != null) {
+            mongo.stop();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package edu.project.upload.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import edu.project.upload.model.FileInfo;
+import edu.project.upload.model.Visibility;
+import org.bson.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.time.LocalDateTime;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning a {@link FileInfo} into BSON and back (every save and read) and into JSON (every API response).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileInfoSerializationBenchmark {
+    private MappingMongoConverter converter;
+    private ObjectMapper objectMapper;
+    private FileInfo fileInfo;
+    private Document document;
+
+    @Setup
+    public void setup() throws JsonProcessingException {
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.afterPropertiesSet();
+        converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.afterPropertiesSet();
+        objectMapper = JsonMapper.builder().findAndAddModules().build();
+
+        String fileId = UUID.randomUUID().toString();
+        fileInfo = FileInfo.builder()
+                .fileId(fileId)
+                .userId("benchmark-user")
+                .fileName("report-2024-final.pdf")
+                .tags(Set.of("reports", "finance", "q4"))
+                .fileSize(4_194_304)
+                .visibility(Visibility.PUBLIC)
+                .uploadDate(LocalDateTime.now())
+                .hash("9e107d9d372bb6826bd81d3542a419d6")
+                .hashAlgo("MD5")
+                .contentType("application/pdf")
+                .downloadLink("/api/v1/files/" + fileId + "/download")
+                .storageKey("65f1c0ffee0000000000abcd")
+                .build();
+        document = toDocument();
+    }
+
+    @Benchmark
+    public Document toDocument() {
+        Document target = new Document();
+        converter.write(fileInfo, target);
+        return target;
+    }
+
+    @Benchmark
+    public FileInfo fromDocument() {
+        return converter.read(FileInfo.class, document);
+    }
+
+    @Benchmark
+    public byte[] toJson() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(fileInfo);
+    }
+}
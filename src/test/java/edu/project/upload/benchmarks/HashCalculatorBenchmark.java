@@ -0,0 +1,70 @@
+package edu.project.upload.benchmarks;
+
+import edu.project.upload.configuration.UploadConfiguration;
+import edu.project.upload.services.DefaulHashCalculator;
+import edu.project.upload.services.HashCalculator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hash throughput per algorithm and file size, for the buffered one-shot hash and for hashing while the
+ * stream is consumed in 8 KB reads the way GridFS consumes it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HashCalculatorBenchmark {
+    @Param({"MD5", "SHA-256", "XXH64", "TREE-SHA-256"})
+    private String algorithm;
+
+    @Param({"4096", "1048576", "67108864"})
+    private int size;
+
+    private HashCalculator hashCalculator;
+    private byte[] content;
+
+    @Setup
+    public void setup() {
+        UploadConfiguration uploadConfiguration = new UploadConfiguration();
+        uploadConfiguration.setHashAlgo(algorithm);
+        hashCalculator = new DefaulHashCalculator(uploadConfiguration);
+        content = new byte[size];
+        new Random(42).nextBytes(content);
+    }
+
+    @Benchmark
+    public String calculateHash() {
+        return hashCalculator.calculateHash(new ByteArrayInputStream(content));
+    }
+
+    @Benchmark
+    public String digestStream() throws IOException {
+        byte[] buffer = new byte[8192];
+        try (DigestInputStream digestInputStream = hashCalculator.digestStream(new ByteArrayInputStream(content))) {
+            InputStream in = digestInputStream;
+            while (in.read(buffer) != -1) {
+                // consumed like a store would
+            }
+            return hashCalculator.getHash(digestInputStream);
+        }
+    }
+}
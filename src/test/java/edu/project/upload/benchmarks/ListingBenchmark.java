@@ -0,0 +1,144 @@
+package edu.project.upload.benchmarks;
+
+import edu.project.upload.model.CursorPage;
+import edu.project.upload.model.FileInfo;
+import edu.project.upload.model.Visibility;
+import edu.project.upload.requests.FileListRequest;
+import edu.project.upload.services.TagCountStore;
+import edu.project.upload.services.UploadService;
+import org.bson.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code listFiles} and {@code listTags} over {@code files} collections of growing size. Files are spread
+ * over {@value #USERS} users and {@value #TAGS} tags, half of them public.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ListingBenchmark {
+    private static final int USERS = 1_000;
+    private static final int TAGS = 50;
+    private static final int PAGE_SIZE = 20;
+    private static final int INSERT_BATCH = 10_000;
+
+    @Param({"10000", "100000", "1000000"})
+    private int documents;
+
+    private BenchmarkApplication application;
+    private UploadService uploadService;
+    private String secondCursor;
+
+    @Setup
+    public void setup() {
+        application = new BenchmarkApplication();
+        uploadService = application.getBean(UploadService.class);
+        MongoTemplate mongoTemplate = application.getBean(MongoTemplate.class);
+        String collection = mongoTemplate.getCollectionName(FileInfo.class);
+        Random random = new Random(42);
+        List<Document> batch = new ArrayList<>(INSERT_BATCH);
+        for (int i = 0; i < documents; i++) {
+            String fileId = UUID.randomUUID().toString();
+            batch.add(new Document("_id", fileId)
+                    .append("userId", user(i % USERS))
+                    .append("fileName", String.format("file-%08d.bin", i))
+                    .append("tags", List.of(tag(random.nextInt(TAGS)), tag(random.nextInt(TAGS))))
+                    .append("fileSize", 1024L)
+                    .append("visibility", (i % 2 == 0 ? Visibility.PUBLIC : Visibility.PRIVATE).name())
+                    .append("uploadDate", new Date())
+                    .append("hash", String.format("%032x", i))
+                    .append("hashAlgo", "MD5")
+                    .append("contentType", "application/octet-stream")
+                    .append("downloadLink", "/api/v1/files/" + fileId + "/download")
+                    .append("gridFsId", String.format("%024x", i)));
+            if (batch.size() == INSERT_BATCH) {
+                mongoTemplate.getCollection(collection).insertMany(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            mongoTemplate.getCollection(collection).insertMany(batch);
+        }
+        application.getBean(TagCountStore.class).rebuild();
+        secondCursor = uploadService.listFiles(publicListRequest(null)).getNextCursor();
+    }
+
+    @TearDown
+    public void tearDown() {
+        application.close();
+    }
+
+    @Benchmark
+    public Page<FileInfo> publicFirstPage() {
+        return uploadService.listFiles(null, Visibility.PUBLIC, null, PageRequest.of(0, PAGE_SIZE, Sort.by("fileName")));
+    }
+
+    @Benchmark
+    public Page<FileInfo> publicMiddlePage() {
+        int middlePage = documents / 2 / PAGE_SIZE / 2;
+        return uploadService.listFiles(null, Visibility.PUBLIC, null, PageRequest.of(middlePage, PAGE_SIZE, Sort.by("fileName")));
+    }
+
+    @Benchmark
+    public CursorPage<FileInfo> publicCursorPage() {
+        return uploadService.listFiles(publicListRequest(secondCursor));
+    }
+
+    @Benchmark
+    public Page<FileInfo> privateByTag() {
+        return uploadService.listFiles(user(7), Visibility.PRIVATE, tag(3), PageRequest.of(0, PAGE_SIZE, Sort.by("fileName")));
+    }
+
+    @Benchmark
+    public Set<String> listTags() {
+        return uploadService.listTags(user(7));
+    }
+
+    @Benchmark
+    public Map<String, Long> listTagCounts() {
+        return uploadService.listTagCounts(user(7));
+    }
+
+    private static FileListRequest publicListRequest(String cursor) {
+        FileListRequest request = new FileListRequest();
+        request.setVisibility(Visibility.PUBLIC.name());
+        request.setSize(PAGE_SIZE);
+        request.setCursor(cursor);
+        return request;
+    }
+
+    private static String user(int n) {
+        return "benchmark-user-" + n;
+    }
+
+    private static String tag(int n) {
+        return "tag" + n;
+    }
+}
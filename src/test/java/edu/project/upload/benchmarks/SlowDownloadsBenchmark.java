@@ -0,0 +1,93 @@
+package edu.project.upload.benchmarks;
+
+import edu.project.upload.configuration.ExecutionMode;
+import edu.project.upload.model.Visibility;
+import edu.project.upload.requests.FileUploadRequest;
+import edu.project.upload.services.UploadService;
+import org.springframework.core.io.Resource;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the execution modes on thousands of concurrent downloads to slow clients. Every download is a real
+ * {@link UploadService#downloadFile} on the upload executor whose GridFS stream is copied to a client that reads
+ * {@value #CLIENT_READ_SIZE} bytes at a time with a pause after each read, so the task blocks on GridFS reads and on
+ * the client the way a download to a slow socket does. Mongo is set up as for the JMH benchmarks.
+ * <p>
+ * Run with {@code java -cp target/test-classes:target/classes:<deps> edu.project.upload.benchmarks.SlowDownloadsBenchmark [downloads] [fileSizeKb] [readDelayMs]}.
+ */
+public class SlowDownloadsBenchmark {
+    private static final int CLIENT_READ_SIZE = 16 * 1024;
+
+    public static void main(String[] args) throws Exception {
+        int downloads = args.length > 0 ? Integer.parseInt(args[0]) : 5_000;
+        int fileSize = (args.length > 1 ? Integer.parseInt(args[1]) : 256) * 1024;
+        long readDelayMs = args.length > 2 ? Long.parseLong(args[2]) : 10;
+
+        run("platform, 16 threads", ExecutionMode.PLATFORM, 0, downloads, fileSize, readDelayMs);
+        run("virtual, unlimited", ExecutionMode.VIRTUAL, 0, downloads, fileSize, readDelayMs);
+        run("virtual, 1000 permits", ExecutionMode.VIRTUAL, 1_000, downloads, fileSize, readDelayMs);
+    }
+
+    private static void run(String name, ExecutionMode executionMode, int maxConcurrentTasks, int downloads, int fileSize,
+                            long readDelayMs) throws Exception {
+        try (BenchmarkApplication application = new BenchmarkApplication(
+                "upload.execution-mode=" + executionMode,
+                "upload.max-threads=16",
+                "upload.max-concurrent-tasks=" + maxConcurrentTasks,
+                "upload.admission.queue-capacity=0",
+                "upload.content-cache.enabled=false")) {
+            UploadService uploadService = application.getBean(UploadService.class);
+            ExecutorService executorService = application.getBean(ExecutorService.class);
+            byte[] content = new byte[fileSize];
+            new Random(42).nextBytes(content);
+            String fileId = uploadService.uploadFile(new FileUploadRequest("slow-downloads", "slow.bin", Visibility.PRIVATE, List.of(),
+                    "application/octet-stream", new MockMultipartFile("file", "slow.bin", "application/octet-stream", content))).getFileId();
+
+            long start = System.nanoTime();
+            List<CompletableFuture<Long>> futures = new ArrayList<>(downloads);
+            for (int i = 0; i < downloads; i++) {
+                long submitted = System.nanoTime();
+                futures.add(CompletableFuture.supplyAsync(() -> slowDownload(uploadService, fileId, readDelayMs, submitted), executorService));
+            }
+            long[] latencies = new long[downloads];
+            for (int i = 0; i < downloads; i++) {
+                latencies[i] = futures.get(i).get();
+            }
+            long elapsed = System.nanoTime() - start;
+
+            Arrays.sort(latencies);
+            System.out.printf("%-24s downloads/s: %10.1f   p50: %6d ms   p99: %6d ms%n",
+                    name,
+                    downloads / (elapsed / 1e9),
+                    TimeUnit.NANOSECONDS.toMillis(latencies[downloads / 2]),
+                    TimeUnit.NANOSECONDS.toMillis(latencies[(int) (downloads * 0.99)]));
+        }
+    }
+
+    private static long slowDownload(UploadService uploadService, String fileId, long readDelayMs, long submitted) {
+        ResponseEntity<?> response = uploadService.downloadFile(fileId);
+        byte[] buffer = new byte[CLIENT_READ_SIZE];
+        try (InputStream in = ((Resource) response.getBody()).getInputStream()) {
+            while (in.readNBytes(buffer, 0, buffer.length) > 0) {
+                Thread.sleep(readDelayMs);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return System.nanoTime() - submitted;
+    }
+}
@@ -0,0 +1,97 @@
+package edu.project.upload.benchmarks;
+
+import edu.project.upload.model.FileInfo;
+import edu.project.upload.model.Visibility;
+import edu.project.upload.requests.FileUploadRequest;
+import edu.project.upload.services.UploadService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.Resource;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link UploadService#uploadFile} and {@link UploadService#downloadFile} end to end against Mongo.
+ * Every upload gets distinct content, so no upload is answered by linking an existing blob.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class UploadDownloadBenchmark {
+    @Param({"1024", "1048576", "16777216"})
+    private int size;
+
+    @Param({"true", "false"})
+    private boolean singlePassUpload;
+
+    private final AtomicLong counter = new AtomicLong();
+    private BenchmarkApplication application;
+    private UploadService uploadService;
+    private byte[] content;
+    private String downloadFileId;
+
+    @Setup
+    public void setup() {
+        application = new BenchmarkApplication("upload.single-pass-upload=" + singlePassUpload);
+        uploadService = application.getBean(UploadService.class);
+        content = new byte[size];
+        new Random(42).nextBytes(content);
+        downloadFileId = upload().getFileId();
+    }
+
+    @TearDown
+    public void tearDown() {
+        application.close();
+    }
+
+    @Benchmark
+    public FileInfo uploadFile() {
+        return upload();
+    }
+
+    @Benchmark
+    public long downloadFile() throws IOException {
+        ResponseEntity<?> response = uploadService.downloadFile(downloadFileId);
+        byte[] buffer = new byte[64 * 1024];
+        long total = 0;
+        try (InputStream in = ((Resource) response.getBody()).getInputStream()) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                total += read;
+            }
+        }
+        return total;
+    }
+
+    private FileInfo upload() {
+        long n = counter.incrementAndGet();
+        // the counter in the first bytes keeps every upload unique
+        byte[] unique = content.clone();
+        ByteBuffer.wrap(unique).putLong(0, n);
+        String fileName = "benchmark-" + n + ".bin";
+        MockMultipartFile file = new MockMultipartFile("file", fileName, "application/octet-stream", unique);
+        return uploadService.uploadFile(new FileUploadRequest("benchmark-user-" + n, fileName, Visibility.PRIVATE,
+                List.of("benchmark"), "application/octet-stream", file));
+    }
+}
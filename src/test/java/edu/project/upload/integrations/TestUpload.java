@@ -1,33 +1,97 @@
 package edu.project.upload.integrations;
 
+import edu.project.upload.configuration.UploadConfiguration;
+import edu.project.upload.model.BatchUploadItem;
+import edu.project.upload.model.CursorPage;
+import edu.project.upload.model.UploadSession;
+import edu.project.upload.model.UserTags;
 import edu.project.upload.model.Visibility;
 import edu.project.upload.repositories.FileInfoRepository;
+import edu.project.upload.requests.FileArchiveRequest;
+import edu.project.upload.requests.FileBatchUploadRequest;
+import edu.project.upload.requests.FileBulkRequest;
+import edu.project.upload.requests.FileListRequest;
+import edu.project.upload.requests.UploadSessionCreateRequest;
+import edu.project.upload.services.AdmissionControl;
+import edu.project.upload.services.AdmissionException;
 import edu.project.upload.services.AuthException;
+import edu.project.upload.services.ContentCodec;
+import edu.project.upload.services.ContentDeletionQueue;
+import edu.project.upload.services.ContentStorage;
+import edu.project.upload.services.FileDeletionWorker;
+import edu.project.upload.services.HashCalculator;
+import edu.project.upload.services.OrphanReconciler;
+import edu.project.upload.services.StoredObject;
+import edu.project.upload.services.TagCountStore;
+import edu.project.upload.services.UploadSessionService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.bson.types.ObjectId;
 import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.web.servlet.MockMvc;
 import edu.project.upload.model.FileInfo;
 import edu.project.upload.requests.FileUploadRequest;
 import edu.project.upload.services.UploadService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.web.servlet.MultipartProperties;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.util.unit.DataSize;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest
+@AutoConfigureMockMvc
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
 public class TestUpload {
     @Autowired
@@ -36,6 +100,60 @@ public class TestUpload {
     @Autowired
     private FileInfoRepository repository;
 
+    @Autowired
+    private UploadSessionService uploadSessionService;
+
+    @Autowired
+    private HashCalculator hashCalculator;
+
+    @Autowired
+    private UploadConfiguration uploadConfiguration;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private AdmissionControl admissionControl;
+
+    @Autowired
+    private ContentStorage contentStorage;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private OrphanReconciler orphanReconciler;
+
+    @Autowired
+    private FileDeletionWorker fileDeletionWorker;
+
+    @Autowired
+    private ContentDeletionQueue contentDeletionQueue;
+
+    @Autowired
+    private TagCountStore tagCountStore;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private MultipartProperties multipartProperties;
+
+    private String configuredHashAlgo;
+
+    @BeforeAll
+    public void before() {
+        configuredHashAlgo = uploadConfiguration.getHashAlgo();
+    }
+
+    /**
+     * Tests switch the hash algorithm on the shared configuration, the next test starts with the configured one again.
+     */
+    @AfterEach
+    public void restoreConfiguration() {
+        uploadConfiguration.setHashAlgo(configuredHashAlgo);
+    }
+
     @AfterAll
     public void after() {
         repository.deleteAll();
@@ -77,6 +195,250 @@ public class TestUpload {
         assertDoesNotThrow(() -> uploadService.uploadFile(req));
     }
 
+    @Test
+    public void testSameContentSharedAcrossUsers() throws IOException {
+        String content = randomString("shared_content");
+        MockMultipartFile file1 = new MockMultipartFile("file", "shared.txt", "text/plain", content.getBytes());
+        FileInfo first = uploadService.uploadFile(new FileUploadRequest(randomString("user"), "shared.txt", Visibility.PRIVATE, List.of("tag"), "text/plain", file1));
+        MockMultipartFile file2 = new MockMultipartFile("file", "shared.txt", "text/plain", content.getBytes());
+        FileInfo second = uploadService.uploadFile(new FileUploadRequest(randomString("user"), "shared.txt", Visibility.PRIVATE, List.of("tag"), "text/plain", file2));
+        assertEquals(first.getStorageKey(), second.getStorageKey());
+
+        uploadService.deleteFile(first.getFileId(), first.getUserId());
+        ResponseEntity<?> response = uploadService.downloadFile(second.getFileId());
+        try (InputStream inputStream = ((InputStreamResource) response.getBody()).getInputStream()) {
+            assertArrayEquals(content.getBytes(), inputStream.readAllBytes());
+        }
+    }
+
+    @Test
+    public void testContentIsNotSharedByBrokenHash() {
+        String content = randomString("md5_content");
+        uploadConfiguration.setHashAlgo("MD5");
+        FileInfo first = uploadService.uploadFile(new FileUploadRequest(randomString("user"), "md5.txt", Visibility.PRIVATE, List.of(), "text/plain",
+                new MockMultipartFile("file", "md5.txt", "text/plain", content.getBytes())));
+        FileInfo second = uploadService.uploadFile(new FileUploadRequest(randomString("user"), "md5.txt", Visibility.PRIVATE, List.of(), "text/plain",
+                new MockMultipartFile("file", "md5.txt", "text/plain", content.getBytes())));
+        assertEquals(first.getHash(), second.getHash());
+        assertNotEquals(first.getStorageKey(), second.getStorageKey());
+    }
+
+    @Test
+    public void testXxHash64KnownAnswers() {
+        assertEquals(Map.of("", "ef46db3751d8e999", "abc", "44bc2cf5ad770999"), hashesWith("XXH64", "", "abc"));
+    }
+
+    @Test
+    public void testTreeHashKnownAnswers() {
+        int segmentSize = 1 << 20;
+        uploadConfiguration.setHashAlgo("TREE-SHA-256");
+        assertEquals("aa2b4bcb9774a26b821d50c24e91db69cd66433ec016eb15717a96b27e1dd9c4",
+                hashCalculator.calculateHash(new ByteArrayInputStream(new byte[0])));
+        assertEquals("8f9f7d9212855677b9cbc4f64da7706f3630e80bad9f70be02a2f2c8dd95b50b",
+                hashCalculator.calculateHash(new ByteArrayInputStream(new byte[segmentSize])));
+        assertEquals("24b6ca81adaf571f7ae0c9e4d03e0914fb65674e075d8fe30cd7045fb4499d98",
+                hashCalculator.calculateHash(new ByteArrayInputStream(new byte[segmentSize + 1])));
+    }
+
+    @Test
+    public void testTreeHashDoesNotDependOnHowContentIsFed() {
+        int segmentSize = 1 << 20;
+        uploadConfiguration.setHashAlgo("TREE-SHA-256");
+        for (int size : new int[]{1, segmentSize - 1, segmentSize, segmentSize + 1, 3 * segmentSize + 17}) {
+            byte[] content = new byte[size];
+            ThreadLocalRandom.current().nextBytes(content);
+            String hash = hashCalculator.calculateHash(new ByteArrayInputStream(content));
+
+            MessageDigest digest = hashCalculator.newDigest();
+            for (int offset = 0, step = 1; offset < size; offset += step, step = step * 7 % 100_003) {
+                step = Math.min(step, size - offset);
+                digest.update(content, offset, step);
+            }
+            assertEquals(hash, hashCalculator.getHash(digest), "size " + size);
+            MessageDigest byteByByte = hashCalculator.newDigest();
+            for (byte b : content) {
+                byteByByte.update(b);
+            }
+            assertEquals(hash, hashCalculator.getHash(byteByByte), "size " + size);
+        }
+    }
+
+    private Map<String, String> hashesWith(String algorithm, String... contents) {
+        String hashAlgo = uploadConfiguration.getHashAlgo();
+        uploadConfiguration.setHashAlgo(algorithm);
+        try {
+            Map<String, String> hashes = new HashMap<>();
+            for (String content : contents) {
+                hashes.put(content, hashCalculator.calculateHash(new ByteArrayInputStream(content.getBytes())));
+            }
+            return hashes;
+        } finally {
+            uploadConfiguration.setHashAlgo(hashAlgo);
+        }
+    }
+
+    @Test
+    public void testHashIsStoredWithAlgorithm() throws IOException {
+        MockMultipartFile file = new MockMultipartFile("file", "hashed.txt", "text/plain", randomString("content").getBytes());
+        FileInfo uploadedFile = uploadService.uploadFile(new FileUploadRequest(randomString("user"), "hashed.txt", Visibility.PRIVATE, List.of(), "text/plain", file));
+
+        assertEquals(uploadConfiguration.getHashAlgo(), uploadedFile.getHashAlgo());
+        assertEquals(hashCalculator.calculateHash(file.getInputStream()), uploadedFile.getHash());
+    }
+
+    @Test
+    public void testUploadAndDownloadAreMetered() throws IOException {
+        byte[] content = randomString("metered").getBytes();
+        double uploadedBefore = meterRegistry.get("upload.bytes").counter().count();
+        double downloadedBefore = meterRegistry.get("download.bytes").counter().count();
+        MockMultipartFile file = new MockMultipartFile("file", "metered.txt", "text/plain", content);
+        FileInfo uploadedFile = uploadService.uploadFile(new FileUploadRequest(randomString("user"), "metered.txt", Visibility.PRIVATE, List.of(), "text/plain", file));
+        try (InputStream inputStream = ((InputStreamResource) uploadService.downloadFile(uploadedFile.getFileId()).getBody()).getInputStream()) {
+            inputStream.readAllBytes();
+        }
+
+        assertTrue(meterRegistry.get("upload.bytes").counter().count() - uploadedBefore >= content.length);
+        assertTrue(meterRegistry.get("download.bytes").counter().count() - downloadedBefore >= content.length);
+        assertTrue(meterRegistry.get("upload.metadata.save").timer().count() > 0);
+    }
+
+    @Test
+    public void testStreamedUpload() throws IOException {
+        byte[] content = randomString("streamed").getBytes();
+        FileInfo uploadedFile = uploadService.uploadFile(randomString("user"), "streamed.txt", Visibility.PRIVATE, List.of("Stream"),
+                "text/plain", new ByteArrayInputStream(content));
+
+        assertEquals(content.length, uploadedFile.getFileSize());
+        assertEquals(Set.of("stream"), uploadedFile.getTags());
+        assertEquals(hashCalculator.calculateHash(new ByteArrayInputStream(content)), uploadedFile.getHash());
+        try (InputStream inputStream = ((InputStreamResource) uploadService.downloadFile(uploadedFile.getFileId()).getBody()).getInputStream()) {
+            assertArrayEquals(content, inputStream.readAllBytes());
+        }
+    }
+
+    @Test
+    public void testBatchUploadReportsEveryFile() {
+        String userId = randomString("user");
+        String content = randomString("content");
+        uploadService.uploadFile(new FileUploadRequest(userId, "taken.txt", Visibility.PRIVATE, List.of(), "text/plain",
+                new MockMultipartFile("file", "taken.txt", "text/plain", randomString("content").getBytes())));
+        FileBatchUploadRequest request = new FileBatchUploadRequest();
+        request.setUserId(userId);
+        request.setVisibility(Visibility.PRIVATE);
+        request.setTags(List.of("batch"));
+        request.setFiles(List.of(
+                new MockMultipartFile("files", "a.txt", "text/plain", content.getBytes()),
+                new MockMultipartFile("files", "taken.txt", "text/plain", randomString("content").getBytes()),
+                new MockMultipartFile("files", "b.txt", "text/plain", content.getBytes()),
+                new MockMultipartFile("files", "c.txt", "text/plain", randomString("content").getBytes())));
+
+        List<BatchUploadItem> items = uploadService.uploadFiles(request);
+
+        assertEquals(List.of(201, 409, 409, 201), items.stream().map(BatchUploadItem::getStatus).toList());
+        assertEquals(Map.of("batch", 2L), uploadService.listTagCounts(userId));
+        assertTrue(repository.existsByUserIdAndFileNameAndDeletedAtIsNull(userId, "c.txt"));
+    }
+
+    @Test
+    public void testConcurrentBulkTagUpdatesKeepCountsExact() {
+        String userId = randomString("user");
+        for (int i = 0; i < 4; i++) {
+            MockMultipartFile file = new MockMultipartFile("file", "concurrent" + i + ".txt", "text/plain", randomString("content").getBytes());
+            uploadService.uploadFile(new FileUploadRequest(userId, "concurrent" + i + ".txt", Visibility.PRIVATE, List.of("base"), "text/plain", file));
+        }
+
+        IntStream.range(0, 4).parallel().forEach(i -> {
+            FileBulkRequest request = new FileBulkRequest();
+            request.setUserId(userId);
+            request.setTag("base");
+            request.setAddTags(List.of("t" + i));
+            uploadService.updateTags(request);
+        });
+        Map<String, Long> expected = Map.of("base", 4L, "t0", 4L, "t1", 4L, "t2", 4L, "t3", 4L);
+        assertEquals(expected, uploadService.listTagCounts(userId));
+        assertEquals(0, mongoTemplate.count(Query.query(Criteria.where("userId").is(userId).and("tagDeltas.0").exists(true)), FileInfo.class));
+
+        FileBulkRequest removeRequest = new FileBulkRequest();
+        removeRequest.setUserId(userId);
+        removeRequest.setTag("t0");
+        removeRequest.setRemoveTags(List.of("base", "t1"));
+        assertEquals(4, uploadService.updateTags(removeRequest).getModified());
+        assertEquals(Map.of("t0", 4L, "t2", 4L, "t3", 4L), uploadService.listTagCounts(userId));
+
+        // an entry left by a bulk operation that crashed before counting it
+        mongoTemplate.updateMulti(Query.query(Criteria.where("userId").is(userId)), new Update().push("tagDeltas",
+                new Document("op", "crashed").append("added", List.of("ghost")).append("removed", List.of())
+                        .append("at", Date.from(Instant.now().minus(Duration.ofHours(1))))), FileInfo.class);
+        tagCountStore.rebuild(userId);
+        assertEquals(Map.of("t0", 4L, "t2", 4L, "t3", 4L), uploadService.listTagCounts(userId));
+        assertEquals(0, mongoTemplate.count(Query.query(Criteria.where("userId").is(userId).and("tagDeltas.0").exists(true)), FileInfo.class));
+
+        FileBulkRequest deleteRequest = new FileBulkRequest();
+        deleteRequest.setUserId(userId);
+        deleteRequest.setTag("t0");
+        assertEquals(4, uploadService.deleteFiles(deleteRequest).getModified());
+        assertEquals(Map.of(), uploadService.listTagCounts(userId));
+        assertEquals(0, mongoTemplate.count(Query.query(Criteria.where("userId").is(userId).and("tagDeltas.0").exists(true)), FileInfo.class));
+    }
+
+    @Test
+    public void testBulkOperationsOnlyTouchOwnFiles() {
+        String userId = randomString("user");
+        List<String> fileIds = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            MockMultipartFile file = new MockMultipartFile("file", "bulk" + i + ".txt", "text/plain", randomString("content").getBytes());
+            fileIds.add(uploadService.uploadFile(new FileUploadRequest(userId, "bulk" + i + ".txt", Visibility.PRIVATE, List.of("bulk"), "text/plain", file)).getFileId());
+        }
+        MockMultipartFile otherFile = new MockMultipartFile("file", "other.txt", "text/plain", randomString("content").getBytes());
+        FileInfo other = uploadService.uploadFile(new FileUploadRequest(randomString("user"), "other.txt", Visibility.PRIVATE, List.of("bulk"), "text/plain", otherFile));
+
+        FileBulkRequest tagRequest = new FileBulkRequest();
+        tagRequest.setUserId(userId);
+        tagRequest.setFileIds(List.of(fileIds.get(0), fileIds.get(1), other.getFileId()));
+        tagRequest.setAddTags(List.of("Keep"));
+        assertEquals(2, uploadService.updateTags(tagRequest).getModified());
+        assertEquals(Map.of("bulk", 3L, "keep", 2L), uploadService.listTagCounts(userId));
+
+        FileBulkRequest visibilityRequest = new FileBulkRequest();
+        visibilityRequest.setUserId(userId);
+        visibilityRequest.setTag("keep");
+        visibilityRequest.setVisibility(Visibility.PUBLIC);
+        assertEquals(2, uploadService.changeVisibility(visibilityRequest).getModified());
+
+        FileBulkRequest deleteRequest = new FileBulkRequest();
+        deleteRequest.setUserId(userId);
+        deleteRequest.setTag("bulk");
+        assertEquals(3, uploadService.deleteFiles(deleteRequest).getModified());
+        assertEquals(Map.of(), uploadService.listTagCounts(userId));
+        assertTrue(repository.existsById(other.getFileId()));
+        assertThrows(NoSuchElementException.class, () -> uploadService.downloadFile(fileIds.get(2)));
+    }
+
+    @Test
+    public void testArchiveOfTaggedFiles() throws IOException {
+        String userId = randomString("user");
+        String tag = randomString("archive");
+        Map<String, String> contents = Map.of("a.txt", randomString("content"), "b.jpg", randomString("content"));
+        for (Map.Entry<String, String> content : contents.entrySet()) {
+            MockMultipartFile file = new MockMultipartFile("file", content.getKey(), "text/plain", content.getValue().getBytes());
+            uploadService.uploadFile(new FileUploadRequest(userId, content.getKey(), Visibility.PRIVATE, List.of(tag), null, file));
+        }
+        FileArchiveRequest request = new FileArchiveRequest();
+        request.setUserId(userId);
+        request.setTag(tag);
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+
+        uploadService.writeArchive(request, archive);
+
+        Map<String, String> archived = new HashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(archive.toByteArray()))) {
+            for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                archived.put(entry.getName(), new String(zip.readAllBytes()));
+            }
+        }
+        assertEquals(contents, archived);
+    }
+
     @Test
     public void testDeleteOwnFile() {
         MockMultipartFile file = new MockMultipartFile("file", "delete.txt", "text/plain", "delete_content".getBytes());
@@ -128,9 +490,54 @@ public class TestUpload {
         FileInfo uploadedFile = uploadService.uploadFile(req);
 
         uploadService.deleteFile(uploadedFile.getFileId(), "user1");
+        fileDeletionWorker.processTombstones();
         assertFalse(repository.findById(uploadedFile.getFileId()).isPresent());
     }
 
+    @Test
+    public void testDeleteHidesFileAndFinishesInBackground() {
+        String userId = randomString("deleting_user");
+        byte[] content = new byte[4096];
+        ThreadLocalRandom.current().nextBytes(content);
+        MockMultipartFile file = new MockMultipartFile("file", "deleted.bin", "application/octet-stream", content);
+        FileInfo deletedFile = uploadService.uploadFile(new FileUploadRequest(userId, "deleted.bin", Visibility.PRIVATE, List.of(), "application/octet-stream", file));
+
+        uploadService.deleteFile(deletedFile.getFileId(), userId);
+        assertThrows(NoSuchElementException.class, () -> uploadService.downloadFile(deletedFile.getFileId()));
+        assertTrue(uploadService.listFiles(userId, Visibility.PRIVATE, null, PageRequest.of(0, 10)).isEmpty());
+        assertThrows(NoSuchElementException.class, () -> uploadService.deleteFile(deletedFile.getFileId(), userId));
+
+        // the tombstone still holds the name, a new upload finishes it on the spot
+        MockMultipartFile replacement = new MockMultipartFile("file", "deleted.bin", "text/plain", randomString("content").getBytes());
+        FileInfo replacementFile = uploadService.uploadFile(new FileUploadRequest(userId, "deleted.bin", Visibility.PRIVATE, List.of(), "text/plain", replacement));
+        assertFalse(repository.findById(deletedFile.getFileId()).isPresent());
+
+        contentDeletionQueue.drain();
+        assertTrue(contentStorage.stat(deletedFile.getStorageKey()).isEmpty());
+        assertTrue(contentStorage.stat(replacementFile.getStorageKey()).isPresent());
+    }
+
+    @Test
+    public void testStaleDeletionClaimIsRemovedWithoutReleasingSharedContentAgain() {
+        byte[] content = randomString("shared").getBytes();
+        FileInfo kept = uploadService.uploadFile(new FileUploadRequest(randomString("user"), "kept.txt", Visibility.PRIVATE, List.of(), "text/plain",
+                new MockMultipartFile("file", "kept.txt", "text/plain", content)));
+        String userId = randomString("user");
+        FileInfo deleted = uploadService.uploadFile(new FileUploadRequest(userId, "deleted.txt", Visibility.PRIVATE, List.of(), "text/plain",
+                new MockMultipartFile("file", "deleted.txt", "text/plain", content)));
+        uploadService.deleteFile(deleted.getFileId(), userId);
+        // a worker claimed the tombstone and died before it released anything
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(deleted.getFileId())),
+                new Update().set("deletionClaimId", "dead-worker")
+                        .set("deletionClaimedAt", LocalDateTime.now().minus(uploadConfiguration.getDeletion().getClaimTimeout()).minusMinutes(1)),
+                FileInfo.class);
+
+        fileDeletionWorker.processTombstones();
+        contentDeletionQueue.drain();
+        assertFalse(repository.findById(deleted.getFileId()).isPresent());
+        assertTrue(contentStorage.stat(kept.getStorageKey()).isPresent());
+    }
+
     @Test
     public void testDownloadFile() {
         MockMultipartFile file = new MockMultipartFile("file", "download.txt", "text/plain", "fixed content".getBytes());
@@ -151,6 +558,226 @@ public class TestUpload {
         }
     }
 
+    @Test
+    public void testSmallPublicFilesAreServedFromContentCache() throws IOException {
+        byte[] content = randomString("icon").getBytes();
+        MockMultipartFile file = new MockMultipartFile("file", "icon.txt", "text/plain", content);
+        FileInfo first = uploadService.uploadFile(new FileUploadRequest(randomString("user"), "icon.txt", Visibility.PUBLIC, List.of(), "text/plain", file));
+        FileInfo second = uploadService.uploadFile(new FileUploadRequest(randomString("user"), "icon.txt", Visibility.PUBLIC, List.of(), "text/plain",
+                new MockMultipartFile("file", "icon.txt", "text/plain", content)));
+        double hits = meterRegistry.get("cache.gets").tag("cache", "file_contents").tag("result", "hit").functionCounter().count();
+
+        for (FileInfo fileInfo : List.of(first, second, first, second)) {
+            ResponseEntity<?> response = uploadService.downloadFile(fileInfo.getFileId());
+            try (InputStream inputStream = ((InputStreamResource) response.getBody()).getInputStream()) {
+                assertArrayEquals(content, inputStream.readAllBytes());
+            }
+        }
+        // the first download only records the content as seen, the second caches it, whichever file it is for
+        assertEquals(hits + 2, meterRegistry.get("cache.gets").tag("cache", "file_contents").tag("result", "hit").functionCounter().count());
+        assertTrue(meterRegistry.get("cache.hit.ratio").tag("cache", "file_contents").gauge().value() > 0);
+    }
+
+    @Test
+    public void testDownloadAfterRenameAndDelete() {
+        String userId = randomString("cache_user");
+        MockMultipartFile file = new MockMultipartFile("file", "cached.txt", "text/plain", randomString("content").getBytes());
+        FileInfo uploadedFile = uploadService.uploadFile(new FileUploadRequest(userId, "cached.txt", Visibility.PUBLIC, List.of(), "text/plain", file));
+        uploadService.downloadFile(uploadedFile.getFileId());
+
+        uploadService.renameFile(uploadedFile.getFileId(), "cached_renamed.txt", userId);
+        ResponseEntity<?> response = uploadService.downloadFile(uploadedFile.getFileId());
+        assertTrue(response.getHeaders().getFirst(HttpHeaders.CONTENT_DISPOSITION).contains("cached_renamed.txt"));
+
+        uploadService.deleteFile(uploadedFile.getFileId(), userId);
+        assertThrows(NoSuchElementException.class, () -> uploadService.downloadFile(uploadedFile.getFileId()));
+    }
+
+    @Test
+    public void testConditionalDownload() {
+        MockMultipartFile file = new MockMultipartFile("file", "conditional.txt", "text/plain", randomString("content").getBytes());
+        FileUploadRequest req = new FileUploadRequest(randomString("user"), "conditional.txt", Visibility.PUBLIC, List.of(), "text/plain", file);
+        FileInfo uploadedFile = uploadService.uploadFile(req);
+
+        ResponseEntity<?> response = uploadService.downloadFile(uploadedFile.getFileId());
+        String etag = response.getHeaders().getETag();
+        assertEquals("\"" + uploadedFile.getHash() + "\"", etag);
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfNoneMatch(etag);
+        ResponseEntity<?> notModified = uploadService.downloadFile(uploadedFile.getFileId(), headers);
+        assertEquals(304, notModified.getStatusCode().value());
+        assertNull(notModified.getBody());
+    }
+
+    @Test
+    public void testDownloadFileRange() throws IOException {
+        MockMultipartFile file = new MockMultipartFile("file", "range.txt", "text/plain", "0123456789abcdef".getBytes());
+        FileUploadRequest req = new FileUploadRequest("user1", "range.txt", Visibility.PUBLIC, List.of("tag1"), "text/plain", file);
+        FileInfo uploadedFile = uploadService.uploadFile(req);
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RANGE, "bytes=10-");
+        ResponseEntity<?> response = uploadService.downloadFile(uploadedFile.getFileId(), headers);
+        assertInstanceOf(Resource.class, response.getBody());
+
+        Resource resource = (Resource) response.getBody();
+        assertEquals(16, resource.contentLength());
+        double downloadedBytes = meterRegistry.get("download.bytes").counter().count();
+        try (InputStream inputStream = resource.getInputStream()) {
+            assertEquals(10, inputStream.skip(10));
+            assertArrayEquals("abcdef".getBytes(), inputStream.readAllBytes());
+        }
+        // the served range counts as downloaded
+        assertTrue(meterRegistry.get("download.bytes").counter().count() >= downloadedBytes + 6);
+    }
+
+    @Test
+    public void testCompressedContentIsDecodedOrPassedThrough() throws IOException {
+        StringBuilder csv = new StringBuilder("id,name,value\n");
+        for (int i = 0; i < 2_000; i++) {
+            csv.append(i).append(",row").append(i).append(",").append(i % 7).append('\n');
+        }
+        byte[] content = csv.toString().getBytes();
+        MockMultipartFile file = new MockMultipartFile("file", "rows.csv", "text/csv", content);
+        FileInfo uploadedFile = uploadService.uploadFile(new FileUploadRequest(randomString("user"), "rows.csv", Visibility.PRIVATE, List.of(), "text/csv", file));
+        assertEquals(content.length, uploadedFile.getFileSize());
+
+        StoredObject storedObject = contentStorage.stat(uploadedFile.getStorageKey()).orElseThrow();
+        assertEquals(Optional.of(ContentCodec.GZIP), storedObject.codec());
+        assertTrue(storedObject.length() < content.length / 2);
+
+        ResponseEntity<?> decoded = uploadService.downloadFile(uploadedFile.getFileId());
+        assertNull(decoded.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(content.length, decoded.getHeaders().getContentLength());
+        try (InputStream inputStream = ((InputStreamResource) decoded.getBody()).getInputStream()) {
+            assertArrayEquals(content, inputStream.readAllBytes());
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.ACCEPT_ENCODING, "br, gzip;q=0.8");
+        ResponseEntity<?> encoded = uploadService.downloadFile(uploadedFile.getFileId(), headers);
+        assertEquals("gzip", encoded.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(storedObject.length(), encoded.getHeaders().getContentLength());
+        try (InputStream inputStream = new GZIPInputStream(((InputStreamResource) encoded.getBody()).getInputStream())) {
+            assertArrayEquals(content, inputStream.readAllBytes());
+        }
+    }
+
+    @Test
+    public void testGridFsChunksAreWrittenInBatches() throws IOException {
+        byte[] content = new byte[10 * 1024 * 1024 + 1];
+        ThreadLocalRandom.current().nextBytes(content);
+        MockMultipartFile file = new MockMultipartFile("file", "large.bin", "application/octet-stream", content);
+        FileInfo uploadedFile = uploadService.uploadFile(new FileUploadRequest(randomString("user"), "large.bin", Visibility.PRIVATE, List.of(), "application/octet-stream", file));
+
+        ObjectId filesId = new ObjectId(uploadedFile.getStorageKey());
+        Document filesDocument = mongoTemplate.getCollection("fs.files").find(new Document("_id", filesId)).first();
+        assertNotNull(filesDocument);
+        int chunkSize = (int) uploadConfiguration.getStorage().getGridfs().getSizeClasses().get(0).getChunkSize().toBytes();
+        assertEquals(chunkSize, filesDocument.getInteger("chunkSize"));
+        assertEquals(content.length, filesDocument.getLong("length"));
+        assertEquals((content.length + chunkSize - 1) / chunkSize, mongoTemplate.getCollection("fs.chunks").countDocuments(new Document("files_id", filesId)));
+
+        ResponseEntity<?> response = uploadService.downloadFile(uploadedFile.getFileId());
+        try (InputStream inputStream = ((InputStreamResource) response.getBody()).getInputStream()) {
+            assertArrayEquals(content, inputStream.readAllBytes());
+        }
+    }
+
+    @Test
+    public void testReconcilerPurgesUnreferencedContent() throws IOException {
+        byte[] content = new byte[4096];
+        ThreadLocalRandom.current().nextBytes(content);
+        String orphanKey = contentStorage.store(new ByteArrayInputStream(content), "orphan.bin", "application/octet-stream");
+        MockMultipartFile file = new MockMultipartFile("file", "kept.txt", "text/plain", randomString("content").getBytes());
+        FileInfo keptFile = uploadService.uploadFile(new FileUploadRequest(randomString("user"), "kept.txt", Visibility.PRIVATE, List.of(), "text/plain", file));
+        // chunk sets of a failed upload and of one still being written, neither has its GridFS file yet
+        Date written = Date.from(Instant.now().minusSeconds(5));
+        ObjectId failedUpload = new ObjectId(written);
+        ObjectId runningUpload = new ObjectId(written);
+        mongoTemplate.getCollection("fs.chunks").insertMany(List.of(
+                new Document("_id", new ObjectId(written)).append("files_id", failedUpload).append("n", 0).append("data", new Binary(content)),
+                new Document("_id", new ObjectId(written)).append("files_id", runningUpload).append("n", 0).append("data", new Binary(content)),
+                new Document("_id", new ObjectId(Date.from(Instant.now().plusSeconds(60)))).append("files_id", runningUpload).append("n", 1)
+                        .append("data", new Binary(content))));
+
+        UploadConfiguration.Reconciler config = uploadConfiguration.getReconciler();
+        Duration gracePeriod = config.getGracePeriod();
+        config.setGracePeriod(Duration.ZERO);
+        try {
+            OrphanReconciler.Report report = orphanReconciler.reconcile();
+            assertTrue(report.purgedContents() >= 1);
+            assertTrue(report.reclaimedBytes() >= content.length);
+        } finally {
+            config.setGracePeriod(gracePeriod);
+        }
+        assertTrue(contentStorage.stat(orphanKey).isEmpty());
+        assertTrue(contentStorage.stat(keptFile.getStorageKey()).isPresent());
+        assertEquals(0, mongoTemplate.getCollection("fs.chunks").countDocuments(new Document("files_id", failedUpload)));
+        assertEquals(2, mongoTemplate.getCollection("fs.chunks").countDocuments(new Document("files_id", runningUpload)));
+        mongoTemplate.getCollection("fs.chunks").deleteMany(new Document("files_id", runningUpload));
+        assertTrue(meterRegistry.get("reconciler.reclaimed.bytes").counter().count() >= content.length);
+    }
+
+    @Test
+    public void testUploadSessionWithChunksOutOfOrder() throws IOException {
+        int chunkSize = uploadConfiguration.getSession().getChunkSize();
+        byte[] content = new byte[chunkSize * 2 + 1024];
+        ThreadLocalRandom.current().nextBytes(content);
+
+        UploadSessionCreateRequest createRequest = new UploadSessionCreateRequest();
+        createRequest.setUserId("session_user");
+        createRequest.setFileName(randomString("session") + ".bin");
+        createRequest.setVisibility(Visibility.PRIVATE);
+        createRequest.setContentType("application/octet-stream");
+        createRequest.setFileSize(content.length);
+        UploadSession session = uploadSessionService.createSession(createRequest);
+        assertEquals(3, session.getTotalChunks());
+
+        for (int chunk : new int[]{2, 0, 1}) {
+            int from = chunk * chunkSize;
+            byte[] data = Arrays.copyOfRange(content, from, Math.min(from + chunkSize, content.length));
+            uploadSessionService.uploadChunk(session.getSessionId(), "session_user", chunk, data);
+        }
+        assertThrows(IllegalArgumentException.class,
+                () -> uploadSessionService.uploadChunk(session.getSessionId(), "session_user", 0, new byte[1]));
+
+        FileInfo fileInfo = uploadSessionService.commitSession(session.getSessionId(), "session_user");
+        assertEquals(content.length, fileInfo.getFileSize());
+        assertEquals(hashCalculator.calculateHash(new ByteArrayInputStream(content)), fileInfo.getHash());
+
+        ResponseEntity<?> response = uploadService.downloadFile(fileInfo.getFileId());
+        try (InputStream inputStream = ((InputStreamResource) response.getBody()).getInputStream()) {
+            assertArrayEquals(content, inputStream.readAllBytes());
+        }
+    }
+
+    @Test
+    public void testConcurrentPutsOfOneChunkKeepHashOfStoredBytes() throws IOException {
+        UploadSessionCreateRequest createRequest = new UploadSessionCreateRequest();
+        createRequest.setUserId("session_user");
+        createRequest.setFileName(randomString("session") + ".bin");
+        createRequest.setVisibility(Visibility.PRIVATE);
+        createRequest.setContentType("application/octet-stream");
+        createRequest.setFileSize(1024);
+        UploadSession session = uploadSessionService.createSession(createRequest);
+
+        List<CompletableFuture<UploadSession>> puts = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            byte[] data = new byte[1024];
+            ThreadLocalRandom.current().nextBytes(data);
+            puts.add(CompletableFuture.supplyAsync(() -> uploadSessionService.uploadChunk(session.getSessionId(), "session_user", 0, data)));
+        }
+        puts.forEach(CompletableFuture::join);
+
+        FileInfo fileInfo = uploadSessionService.commitSession(session.getSessionId(), "session_user");
+        ResponseEntity<?> response = uploadService.downloadFile(fileInfo.getFileId());
+        try (InputStream inputStream = ((InputStreamResource) response.getBody()).getInputStream()) {
+            assertEquals(hashCalculator.calculateHash(new ByteArrayInputStream(inputStream.readAllBytes())), fileInfo.getHash());
+        }
+    }
+
     @Test
     public void testTagCreationAndCaseInsensitiveFilter() {
         MockMultipartFile file = new MockMultipartFile("file", "tag_test.txt", "text/plain", "tag_content".getBytes());
@@ -160,6 +787,36 @@ public class TestUpload {
         assertTrue(page.getContent().stream().anyMatch(f -> f.getFileName().equals("tag_test.txt")));
     }
 
+    @Test
+    public void testTagCountsFollowUploadsAndDeletes() {
+        String userId = randomString("tags_user");
+        MockMultipartFile first = new MockMultipartFile("file", "first.txt", "text/plain", randomString("content").getBytes());
+        MockMultipartFile second = new MockMultipartFile("file", "second.txt", "text/plain", randomString("content").getBytes());
+        FileInfo firstFile = uploadService.uploadFile(new FileUploadRequest(userId, "first.txt", Visibility.PRIVATE, List.of("a.b", "shared"), "text/plain", first));
+        uploadService.uploadFile(new FileUploadRequest(userId, "second.txt", Visibility.PRIVATE, List.of("Shared"), "text/plain", second));
+        assertEquals(Map.of("a.b", 1L, "shared", 2L), uploadService.listTagCounts(userId));
+
+        uploadService.deleteFile(firstFile.getFileId(), userId);
+        assertEquals(Set.of("shared"), uploadService.listTags(userId));
+    }
+
+    @Test
+    public void testTagCountRebuildOnlyReplacesUnchangedCounts() {
+        String userId = randomString("tags_user");
+        MockMultipartFile file = new MockMultipartFile("file", "rebuild.txt", "text/plain", randomString("content").getBytes());
+        uploadService.uploadFile(new FileUploadRequest(userId, "rebuild.txt", Visibility.PRIVATE, List.of("rebuild"), "text/plain", file));
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(userId)), Update.update("counts.rebuild", 7L), UserTags.class);
+        long version = mongoTemplate.findById(userId, UserTags.class).getVersion();
+
+        tagCountStore.rebuild(userId);
+        assertEquals(Map.of("rebuild", 1L), uploadService.listTagCounts(userId));
+        assertEquals(version + 1, mongoTemplate.findById(userId, UserTags.class).getVersion());
+
+        tagCountStore.increment(userId, List.of("rebuild"));
+        tagCountStore.rebuild();
+        assertEquals(Map.of("rebuild", 1L), uploadService.listTagCounts(userId));
+    }
+
     @Test
     public void testPaginationAndSorting() {
         for (int i = 1; i <= 15; i++) {
@@ -173,6 +830,43 @@ public class TestUpload {
         assertEquals(5, page.getContent().size());
     }
 
+    @Test
+    public void testCursorPagination() {
+        String userId = randomString("cursor_user");
+        for (int i = 1; i <= 5; i++) {
+            String fileName = "cursor" + i + ".txt";
+            MockMultipartFile file = new MockMultipartFile("file", fileName, "text/plain", randomString("content").getBytes());
+            uploadService.uploadFile(new FileUploadRequest(userId, fileName, Visibility.PRIVATE, List.of("cursor"), "text/plain", file));
+        }
+
+        FileListRequest request = new FileListRequest();
+        request.setUserId(userId);
+        request.setSize(2);
+        request.setWithCount(true);
+        List<String> fileNames = new ArrayList<>();
+        CursorPage<FileInfo> page;
+        do {
+            page = uploadService.listFiles(request);
+            assertEquals(5, page.getTotalElements());
+            page.getContent().forEach(f -> fileNames.add(f.getFileName()));
+            request.setCursor(page.getNextCursor());
+        } while (page.getNextCursor() != null);
+
+        assertEquals(List.of("cursor1.txt", "cursor2.txt", "cursor3.txt", "cursor4.txt", "cursor5.txt"), fileNames);
+    }
+
+    @Test
+    public void testCursorPaginationRejectsInvalidSize() {
+        FileListRequest request = new FileListRequest();
+        request.setUserId(randomString("cursor_user"));
+        for (int size : new int[]{0, -1, uploadConfiguration.getMaxPageSize() + 1}) {
+            request.setSize(size);
+            assertThrows(IllegalArgumentException.class, () -> uploadService.listFiles(request));
+        }
+        request.setSize(uploadConfiguration.getMaxPageSize());
+        assertTrue(uploadService.listFiles(request).getContent().isEmpty());
+    }
+
     @Test
     public void testChangeVisibility() {
         String fileName = randomString("visibility") + ".txt";
@@ -221,4 +915,130 @@ public class TestUpload {
     public void testInvalidFileDownload() {
         assertThrows(NoSuchElementException.class, () -> uploadService.downloadFile(randomString("nonexistent-file-id")));
     }
+
+    @Test
+    public void testPerUserAdmissionLimit() {
+        String userId = randomString("user");
+        List<AdmissionControl.Admission> admissions = new ArrayList<>();
+        for (int i = 0; i < uploadConfiguration.getAdmission().getMaxConcurrentPerUser(); i++) {
+            admissions.add(admissionControl.admitUser(userId));
+        }
+        AdmissionException rejected = assertThrows(AdmissionException.class, () -> admissionControl.admitUser(userId));
+        assertTrue(rejected.isPerUser());
+        assertDoesNotThrow(() -> admissionControl.admitUser(randomString("user")).close());
+
+        admissions.get(0).close();
+        admissions.get(0).close();
+        admissions.set(0, admissionControl.admitUser(userId));
+        assertThrows(AdmissionException.class, () -> admissionControl.admitUser(userId));
+        admissions.forEach(AdmissionControl.Admission::close);
+    }
+
+    @Test
+    public void testByteBudgetAdmission() {
+        long budget = uploadConfiguration.getAdmission().getMaxInFlightBytes().toBytes();
+        AdmissionControl.Admission oversized = admissionControl.admitBytes(2 * budget);
+        AdmissionException rejected = assertThrows(AdmissionException.class, () -> admissionControl.admitBytes(1));
+        assertFalse(rejected.isPerUser());
+        oversized.close();
+
+        AdmissionControl.Admission half = admissionControl.admitBytes(budget / 2);
+        AdmissionControl.Admission rest = admissionControl.admitBytes(budget - budget / 2);
+        assertThrows(AdmissionException.class, () -> admissionControl.admitBytes(1));
+        half.close();
+        assertDoesNotThrow(() -> admissionControl.admitBytes(budget / 2).close());
+        rest.close();
+    }
+
+    @Test
+    public void testAdmissionFilterChargesUploadsBeforeSpooling() throws Exception {
+        String userId = randomString("user");
+        byte[] content = randomString("content").getBytes();
+        MockMultipartFile file = new MockMultipartFile("file", "admitted.txt", "text/plain", content);
+
+        try (AdmissionControl.Admission budget = admissionControl.admitBytes(uploadConfiguration.getAdmission().getMaxInFlightBytes().toBytes())) {
+            mockMvc.perform(put("/api/v1/files/sessions/" + randomString("session") + "/chunks/0?userId=" + userId)
+                            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                            .content(content))
+                    .andExpect(status().isServiceUnavailable())
+                    .andExpect(header().exists(HttpHeaders.RETRY_AFTER));
+        }
+
+        List<AdmissionControl.Admission> admissions = new ArrayList<>();
+        for (int i = 0; i < uploadConfiguration.getAdmission().getMaxConcurrentPerUser(); i++) {
+            admissions.add(admissionControl.admitUser(userId));
+        }
+        try {
+            // MockMvc builds multipart requests without a body, the content only gives them a Content-Length
+            mockMvc.perform(multipart("/api/v1/files/upload").file(file).param("userId", userId).param("fileName", "admitted.txt")
+                            .with(request -> {
+                                request.setContent(content);
+                                return request;
+                            }))
+                    .andExpect(status().isTooManyRequests());
+        } finally {
+            admissions.forEach(AdmissionControl.Admission::close);
+        }
+    }
+
+    @Test
+    public void testStreamingUploadOverMultipartBody() throws Exception {
+        String userId = randomString("user");
+        byte[] content = randomString("streamed_content").getBytes();
+        String boundary = "----" + UUID.randomUUID();
+        mockMvc.perform(post("/api/v1/files/upload/stream")
+                        .contentType("multipart/form-data; boundary=" + boundary)
+                        .content(multipartBody(boundary, Map.of("userId", userId, "fileName", "streamed.txt"), content)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.fileName").value("streamed.txt"))
+                .andExpect(jsonPath("$.fileSize").value(content.length));
+
+        FileInfo stored = uploadService.listFiles(userId, Visibility.PRIVATE, null, PageRequest.of(0, 10)).getContent().getFirst();
+        ResponseEntity<?> response = uploadService.downloadFile(stored.getFileId());
+        try (InputStream inputStream = ((Resource) response.getBody()).getInputStream()) {
+            assertArrayEquals(content, inputStream.readAllBytes());
+        }
+    }
+
+    @Test
+    public void testStreamingUploadOverSizeLimit() throws Exception {
+        DataSize maxFileSize = multipartProperties.getMaxFileSize();
+        multipartProperties.setMaxFileSize(DataSize.ofBytes(16));
+        try {
+            String boundary = "----" + UUID.randomUUID();
+            mockMvc.perform(post("/api/v1/files/upload/stream")
+                            .contentType("multipart/form-data; boundary=" + boundary)
+                            .content(multipartBody(boundary, Map.of("userId", randomString("user"), "fileName", "large.txt"), new byte[1024])))
+                    .andExpect(status().isPayloadTooLarge());
+        } finally {
+            multipartProperties.setMaxFileSize(maxFileSize);
+        }
+    }
+
+    private static byte[] multipartBody(String boundary, Map<String, String> fields, byte[] content) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        for (Map.Entry<String, String> field : fields.entrySet()) {
+            body.write(("--" + boundary + "\r\nContent-Disposition: form-data; name=\"" + field.getKey() + "\"\r\n\r\n"
+                    + field.getValue() + "\r\n").getBytes(StandardCharsets.UTF_8));
+        }
+        body.write(("--" + boundary + "\r\nContent-Disposition: form-data; name=\"file\"; filename=\"" + fields.get("fileName")
+                + "\"\r\nContent-Type: text/plain\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        body.write(content);
+        body.write(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        return body.toByteArray();
+    }
+
+    @Test
+    public void testAdmissionFilterRefusesChunkedBodies() throws Exception {
+        mockMvc.perform(post("/api/v1/files/upload/stream")
+                        .contentType(MediaType.MULTIPART_FORM_DATA)
+                        .header(HttpHeaders.TRANSFER_ENCODING, "chunked"))
+                .andExpect(status().isLengthRequired());
+        // JSON endpoints are not charged
+        mockMvc.perform(post("/api/v1/files/bulk/tags")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header(HttpHeaders.TRANSFER_ENCODING, "chunked")
+                        .content("{\"userId\": \"" + randomString("user") + "\", \"fileIds\": [\"" + randomString("file") + "\"], \"addTags\": [\"tag\"]}"))
+                .andExpect(status().isOk());
+    }
 }
@@ -0,0 +1,18 @@
+curl -X POST -k http://localhost:8089/api/v1/files/sessions \
+  -H "Content-Type: application/json" \
+  -d '{
+        "userId": "2",
+        "fileName": "test_4.json",
+        "visibility": "PRIVATE",
+        "tags": ["json"],
+        "contentType": "application/x-json",
+        "fileSize": 53
+      }'
+
+curl -X PUT -k "http://localhost:8089/api/v1/files/sessions/0f0a3c1e-5d5b-4c43-9f2e-0d1f1f4f2a11/chunks/0?userId=2" \
+  -H "Content-Type: application/octet-stream" \
+  --data-binary "@test.json"
+
+curl -X GET -k "http://localhost:8089/api/v1/files/sessions/0f0a3c1e-5d5b-4c43-9f2e-0d1f1f4f2a11?userId=2"
+
+curl -X POST -k "http://localhost:8089/api/v1/files/sessions/0f0a3c1e-5d5b-4c43-9f2e-0d1f1f4f2a11/commit?userId=2"
@@ -0,0 +1,7 @@
+curl -k http://localhost:8089/api/v1/files/upload/stream \
+  -F "userId=2" \
+  -F "fileName=test_4.json" \
+  -F "visibility=PRIVATE" \
+  -F "tags=json" \
+  -F "contentType=application/x-json" \
+  -F "file=@C:\Users\norsa\IdeaProjects\upload-service\src\test\resources\requests\upload\test.json"